@@ -0,0 +1,73 @@
+package org.sindaryn.testifi;
+
+import javax.persistence.Entity;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.*;
+
+import static org.sindaryn.datafi.reflection.ReflectionCache.getClassFields;
+import static org.sindaryn.mockeri.StaticUtils.isId;
+
+/**
+ * Reflective metadata of a single class, resolved once and shared across threads.
+ * Fields are made accessible up front. Superclass fields shadowed by a field of the same name
+ * are still listed by {@link #fields()}, whereas {@link #field(String)} resolves to the shadowing one.
+ */
+public class ClassMetadata {
+
+    private static final MetadataCache<ClassMetadata> cache = new MetadataCache<>("class metadata", ClassMetadata::new);
+
+    private final boolean isEntity;
+    private final List<Field> fields = new ArrayList<>();
+    private final Map<String, Field> fieldsByName = new HashMap<>();
+    private final Field idField;
+    private final Method idGetter;
+
+    private ClassMetadata(Class<?> clazz) {
+        this.isEntity = resolveIsEntity(clazz);
+        Field id = null;
+        for(Field field : getClassFields(clazz)){
+            field.setAccessible(true);
+            fields.add(field);
+            Field shadowed = fieldsByName.get(field.getName());
+            if(shadowed == null || shadowed.getDeclaringClass().isAssignableFrom(field.getDeclaringClass()))
+                fieldsByName.put(field.getName(), field);
+            if(id == null && isId(field)) id = field;
+        }
+        this.idField = id;
+        Method getter;
+        try {
+            getter = clazz.getMethod("getId");
+        } catch (NoSuchMethodException e) {
+            getter = null;
+        }
+        this.idGetter = getter;
+    }
+
+    public static ClassMetadata of(Class<?> clazz) {
+        return cache.get(clazz);
+    }
+
+    //walks up the hierarchy so that hibernate proxies are recognized as well
+    private static boolean resolveIsEntity(Class<?> clazz) {
+        for(Class<?> type = clazz; type != null && type != Object.class; type = type.getSuperclass())
+            if(type.isAnnotationPresent(Entity.class)) return true;
+        return false;
+    }
+
+    public boolean isEntity() {
+        return isEntity;
+    }
+    public Field field(String fieldName) {
+        return fieldsByName.get(fieldName);
+    }
+    public Collection<Field> fields() {
+        return Collections.unmodifiableList(fields);
+    }
+    public Field idField() {
+        return idField;
+    }
+    public Method idGetter() {
+        return idGetter;
+    }
+}
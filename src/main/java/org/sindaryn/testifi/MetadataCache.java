@@ -0,0 +1,60 @@
+package org.sindaryn.testifi;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Thread safe, class keyed cache of reflective metadata, backed by a {@link ClassValue} -
+ * lookups neither build keys nor take locks. Entries are never evicted: values holding on to their
+ * class (fields, methods, method handles) keep it and its class loader reachable for as long as the cache is.
+ * Every cache registers itself by name, so that hit / miss counts can be inspected via {@link #all()}.
+ */
+public class MetadataCache<V> {
+
+    private static final Map<String, MetadataCache<?>> registry = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final ClassValue<V> values;
+
+    public MetadataCache(String name, Function<Class<?>, V> loader) {
+        this.name = name;
+        this.values = new ClassValue<V>() {
+            @Override
+            protected V computeValue(Class<?> clazz) {
+                misses.increment();
+                return loader.apply(clazz);
+            }
+        };
+        registry.put(name, this);
+    }
+
+    public V get(Class<?> clazz) {
+        lookups.increment();
+        return values.get(clazz);
+    }
+
+    public String getName() {
+        return name;
+    }
+    public long getHits() {
+        return lookups.sum() - misses.sum();
+    }
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public static Collection<MetadataCache<?>> all() {
+        return Collections.unmodifiableCollection(registry.values());
+    }
+
+    @Override
+    public String toString() {
+        return name + ": " + getHits() + " hits, " + getMisses() + " misses";
+    }
+}
@@ -9,6 +9,13 @@ import org.sindaryn.datafi.reflection.CachedEntityType;
 import org.sindaryn.datafi.reflection.ReflectionCache;
 import org.sindaryn.datafi.service.BaseDataManager;
 import org.sindaryn.mockeri.generator.EntityMocker;
+import org.sindaryn.testifi.sampling.IdRangeSampling;
+import org.sindaryn.testifi.sampling.OffsetPageSampling;
+import org.sindaryn.testifi.sampling.ReservoirSampling;
+import org.sindaryn.testifi.sampling.SamplingStrategy;
+import org.sindaryn.testifi.service.EntityAccessor;
+import org.sindaryn.testifi.service.EntityAccessors;
+import org.springframework.data.domain.PageRequest;
 
 import javax.annotation.processing.ProcessingEnvironment;
 import javax.annotation.processing.RoundEnvironment;
@@ -20,14 +27,16 @@ import javax.persistence.EmbeddedId;
 import javax.persistence.Entity;
 import javax.persistence.Id;
 import javax.tools.Diagnostic;
+import java.io.File;
 import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.Collectors;
 
 import static org.sindaryn.datafi.StaticUtils.*;
-import static org.sindaryn.datafi.reflection.ReflectionCache.getClassFields;
-import static org.sindaryn.mockeri.generator.TestDataGenerator.randomFrom;
 @SuppressWarnings("unchecked")
 public abstract class StaticUtils {
     public static String pluralPascalCaseName(Element entity) {
@@ -37,27 +46,57 @@ public abstract class StaticUtils {
         return toPlural(toPascalCase(clazz.getSimpleName()));
     }
 
-    @SuppressWarnings("unchecked")
+    //settings are read from system properties first, then from the equivalent environment variable
+    //(i.e. 'testifi.sample.max' -> 'TESTIFI_SAMPLE_MAX')
+    public static String setting(String name, String defaultValue) {
+        String value = System.getProperty(name);
+        if(value == null) value = System.getenv(name.toUpperCase().replaceAll("[.\\-]", "_"));
+        return value != null ? value : defaultValue;
+    }
+    public static int intSetting(String name, int defaultValue) {
+        return Integer.parseInt(setting(name, String.valueOf(defaultValue)));
+    }
+
+    //a file under the report directory (testifi.report.dir, target/testifi by default), creating its parent directories
+    public static File reportFile(String subdirectory, String fileName) {
+        File directory = new File(setting("testifi.report.dir", "target/testifi"), subdirectory);
+        if(!directory.exists() && !directory.mkdirs())
+            throw new RuntimeException("cannot create directory " + directory);
+        return new File(directory, fileName);
+    }
+
+    private static volatile SamplingStrategy samplingStrategy = defaultSamplingStrategy();
+    private static SamplingStrategy defaultSamplingStrategy() {
+        switch (setting("testifi.sampling", "offset")){
+            case "id-range": return new IdRangeSampling();
+            case "reservoir": return new ReservoirSampling(intSetting("testifi.sampling.page.size", 500));
+            default: return new OffsetPageSampling();
+        }
+    }
+    public static void setSamplingStrategy(SamplingStrategy strategy) {
+        samplingStrategy = strategy;
+    }
+    public static <T> List<T> randomSample(Class<?> clazz, BaseDataManager<T> dataManager, int amount) {
+        return samplingStrategy.sample(clazz, dataManager, amount);
+    }
+
     public static <T> T randomInstance(Class<?> clazz, BaseDataManager<T> dataManager) {
-        return randomFrom(dataManager.findAll());
+        List<T> sample = randomSample(clazz, dataManager, 1);
+        if(sample.isEmpty())
+            throw new RuntimeException("cannot pick a random instance of " + clazz.getSimpleName() + " from an empty table");
+        return sample.get(0);
     }
 
     public static void setField(Object entity, Object value, String fieldName){
         try {
             fieldName = toCamelCase(fieldName);
-            for (Field field : getClassFields(entity.getClass())){
-                field.setAccessible(true);
-                if(field.getName().equals(fieldName)){
-                    try {
-                        field.setAccessible(true);
-                        field.set(entity, value);
-                    }catch (IllegalAccessException e){
-                        throw new RuntimeException(e);
-                    }
-                    return;
-                }
-            }
-            throw new RuntimeException("cannot find field '" + fieldName + "' in " + entity.getClass().getSimpleName());
+            EntityAccessor<Object> accessor = EntityAccessors.of(entity.getClass());
+            if(accessor != null && accessor.set(entity, fieldName, value))
+                return;
+            Field field = ClassMetadata.of(entity.getClass()).field(fieldName);
+            if(field == null)
+                throw new RuntimeException("cannot find field '" + fieldName + "' in " + entity.getClass().getSimpleName());
+            field.set(entity, value);
         }catch (Exception e){
             throw new RuntimeException(e);
         }
@@ -71,37 +110,34 @@ public abstract class StaticUtils {
         collectionOfCorrectType.addAll(value);
         setField(entity, collectionOfCorrectType, fieldName);
     }
-    private static Map<String, Field> fieldNamesCache = new HashMap<>();
     public static Class<? extends Collection> collectionType(Class<?> hasTsClazz, String fieldName, Class<?> tClazz) {
-        Field field = null;
-        final String key = hasTsClazz.getSimpleName() + "_" + fieldName;
-        if(fieldNamesCache.get(key) != null) field = fieldNamesCache.get(key);
-        else {
-            for(Field aField : getClassFields(hasTsClazz)) {
-                if(aField.getName().equals(fieldName)){
-                    field = aField;
-                    break;
-                }
-            }
-            if(field == null)
-                throw new RuntimeException("field by name of " + fieldName + " not found in entity " + hasTsClazz.getSimpleName());
-        }
-        fieldNamesCache.put(key, field);
+        EntityAccessor<Object> accessor = EntityAccessors.of(hasTsClazz);
+        if(accessor != null && accessor.collectionType(fieldName) != null)
+            return accessor.collectionType(fieldName);
+        Field field = ClassMetadata.of(hasTsClazz).field(fieldName);
+        if(field == null)
+            throw new RuntimeException("field by name of " + fieldName + " not found in entity " + hasTsClazz.getSimpleName());
         return (Class<? extends Collection>) field.getType();
     }
 
+    public static int pageSize() {
+        return intSetting("testifi.page.size", 500);
+    }
+    //pages are ordered by id so that the database and the api walk the table in the same order
+    public static PageRequest idOrderedPage(Class<?> clazz, int pageNumber) {
+        return PageRequest.of(pageNumber, pageSize(), SamplingStrategy.stableOrder(clazz));
+    }
+
     @SuppressWarnings("unchecked")
     public static <T> int totalCount(Class<?> clazz, BaseDataManager<T> dataManager) {
         return Math.toIntExact(dataManager.count());
     }
     public static int randomCount(Class<?> clazz, BaseDataManager dataManager) {
-        return ThreadLocalRandom.current().nextInt(1, totalCount(clazz, dataManager));
+        int randomCount = ThreadLocalRandom.current().nextInt(1, totalCount(clazz, dataManager));
+        return Math.min(randomCount, intSetting("testifi.sample.max", 50));
     }
-    @SuppressWarnings("unchecked")
     public static <T> List<T> firstRandomN(Class<?> clazz, BaseDataManager<T> dataManager) {
-        return dataManager
-                .findAll()
-                .stream().limit(randomCount(clazz, dataManager)).collect(Collectors.toList());
+        return randomSample(clazz, dataManager, randomCount(clazz, dataManager));
     }
 
     @SuppressWarnings("unchecked")
@@ -115,13 +151,39 @@ public abstract class StaticUtils {
         return collection.stream().limit(limit).collect(Collectors.toList());
     }
 
-    //@SuppressWarnings("unchecked")
-    public static <T> List<T> persistCollectionOf(Class<?> tClazz, EntityMocker entityMocker) {
-        List<T> toAdd = new ArrayList<>();
-        int amount = ThreadLocalRandom.current().nextInt(5, 10);
-        for (int i = 0; i < amount; i++)
-            toAdd.add(entityMocker.instantiateEntity(tClazz));
-        return toAdd;
+    public static boolean isEntity(Class<?> clazz) {
+        return ClassMetadata.of(clazz).isEntity();
+    }
+    //all entities are required to expose a public getId() - going through it rather
+    //than the underlying field keeps this working for uninitialized proxies
+    public static Object entityId(Object entity) {
+        Method getter = ClassMetadata.of(entity.getClass()).idGetter();
+        if(getter == null) return null;
+        try {
+            return getter.invoke(entity);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    //in 'partitioned' isolation mode, tests which write to the database only ever touch rows they persisted
+    //themselves, so that they can safely run in parallel against a shared database
+    public static boolean isPartitioned() {
+        return "partitioned".equals(setting("testifi.isolation", "shared"));
+    }
+    public static <T> List<T> ownedRows(Class<?> clazz, BaseDataManager<T> dataManager, EntityMocker entityMocker) {
+        if(!isPartitioned())
+            return firstRandomN(clazz, dataManager);
+        return populate(clazz, dataManager, entityMocker, ThreadLocalRandom.current().nextInt(5, 10));
+    }
+    public static <T> T ownedRow(Class<?> clazz, BaseDataManager<T> dataManager, EntityMocker entityMocker) {
+        if(!isPartitioned())
+            return randomInstance(clazz, dataManager);
+        return populate(clazz, dataManager, entityMocker, 1).get(0);
+    }
+
+    public static <T> List<T> persistCollectionOf(Class<?> tClazz, BaseDataManager<T> dataManager, EntityMocker entityMocker) {
+        return persistInBatches(transientlyInstantiateCollectionOf(tClazz, entityMocker), dataManager);
     }
 
     public static <T> List<T> transientlyInstantiateCollectionOf(Class<?> tClazz, EntityMocker entityMocker) {
@@ -161,7 +223,8 @@ public abstract class StaticUtils {
     }
 
 
-    public static void checkForUniquenessConstraints(TypeElement entity, String resolverName, String[] args, ProcessingEnvironment processingEnvironment) {
+    //reports an error and returns false if any of the list returning resolver's arguments is unique
+    public static boolean checkForUniquenessConstraints(TypeElement entity, String resolverName, String[] args, ProcessingEnvironment processingEnvironment) {
         List<String> uniqueArgTypes = new ArrayList<>();
         Map<String, VariableElement> fieldsMap = getFieldsOfTypeElement(entity);
         for(String arg : args){
@@ -181,6 +244,7 @@ public abstract class StaticUtils {
                                     "The arguments " + uniqueArgTypes.toString() + " are bound by uniqueness constraints, " +
                                     "whereas the return type is java.util.List");
         }
+        return uniqueArgTypes.isEmpty();
     }
 
     @SuppressWarnings("unchecked")
@@ -203,7 +267,22 @@ public abstract class StaticUtils {
 
     public static <T> Map<Object, T> firstRandomNIdMap(Class<?> clazz, BaseDataManager<T> dataManager, ReflectionCache reflectionCache) {
         return firstRandomN(clazz, dataManager).stream().collect(
-                Collectors.toMap(instance -> getId(instance, reflectionCache), instance -> instance));
+                Collectors.toMap(instance -> getId(instance, reflectionCache), instance -> instance, (first, duplicate) -> first));
+    }
+
+    //a virtual thread per task executor on runtimes which have them, a fixed pool of platform threads otherwise
+    public static ExecutorService workerExecutor(int platformThreads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(platformThreads);
+        }
+    }
+
+    public static <T> Map<Object, T> ownedRowsIdMap(Class<?> clazz, BaseDataManager<T> dataManager,
+                                                    EntityMocker entityMocker, ReflectionCache reflectionCache) {
+        return ownedRows(clazz, dataManager, entityMocker).stream().collect(
+                Collectors.toMap(instance -> getId(instance, reflectionCache), instance -> instance, (first, duplicate) -> first));
     }
 
     public static Field resolveFieldToFuzzySearchBy(Class<?> clazz, ReflectionCache reflectionCache) {
@@ -231,9 +310,23 @@ public abstract class StaticUtils {
                 .get(0);
     }
 
-    public static<T> void populate(Class<?> clazz, EntityMocker entityMocker, int desiredNumInstances){
-        for (int i = 0; i < desiredNumInstances; i++) {
-            entityMocker.instantiateEntity(clazz);
-        }
+    public static <T> List<T> populate(Class<?> clazz, BaseDataManager<T> dataManager, EntityMocker entityMocker, int desiredNumInstances){
+        List<T> toPersist = new ArrayList<>(desiredNumInstances);
+        for (int i = 0; i < desiredNumInstances; i++)
+            toPersist.add(entityMocker.instantiateTransientEntity(clazz));
+        return persistInBatches(toPersist, dataManager);
+    }
+
+    public static int batchSize() {
+        return intSetting("testifi.batch.size", 50);
+    }
+    //persists in chunks of testifi.batch.size via saveAll, so that each chunk
+    //can be flushed as a single jdbc batch (given hibernate.jdbc.batch_size is set)
+    public static <T> List<T> persistInBatches(List<T> toPersist, BaseDataManager<T> dataManager) {
+        List<T> persisted = new ArrayList<>(toPersist.size());
+        int batchSize = batchSize();
+        for (int from = 0; from < toPersist.size(); from += batchSize)
+            persisted.addAll(dataManager.saveAll(toPersist.subList(from, Math.min(from + batchSize, toPersist.size()))));
+        return persisted;
     }
 }
@@ -0,0 +1,20 @@
+package org.sindaryn.testifi.annotations;
+
+import java.lang.annotation.*;
+
+/**
+ * Declares an upper bound on the bytes a resolver of the annotated entity may allocate per row it returns
+ * (or per call, for resolvers returning a single entity). Every call the generated tests make to the resolver
+ * is measured, and fails the calling test once the bound is exceeded. Resolvers are named as in the latency
+ * report, i.e. {@code getAll}, {@code addCollection} - or, given the {@link #field()}, {@code getBy},
+ * {@code getAllBy}, {@code getAsEmbeddedCollection} and so forth.
+ */
+@Documented
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Repeatable(AllocationBudgets.class)
+public @interface AllocationBudget {
+    String resolver();
+    String field() default "";
+    long bytesPerRow();
+}
@@ -0,0 +1,23 @@
+package org.sindaryn.testifi.annotations;
+
+import java.lang.annotation.*;
+
+/**
+ * Declares a latency budget for one of an entity's read resolvers. A test is generated for each budget,
+ * which seeds the entity's table with {@link #rows()} rows, warms the resolver up, invokes it
+ * {@link #iterations()} times and fails if the 99th percentile latency exceeds {@link #p99Millis()}.
+ * Supported resolvers are {@code getAll}, {@code getById}, {@code getCollectionById}, {@code fuzzySearch},
+ * and - given the name of the {@link #field()} - {@code getBy}, {@code getByUnique} and {@code getAllBy}.
+ */
+@Documented
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Repeatable(PerformanceBudgets.class)
+public @interface PerformanceBudget {
+    String resolver();
+    String field() default "";
+    long p99Millis();
+    int rows() default 10000;
+    int iterations() default 200;
+    int warmupIterations() default 50;
+}
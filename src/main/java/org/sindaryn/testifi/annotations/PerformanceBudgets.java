@@ -0,0 +1,10 @@
+package org.sindaryn.testifi.annotations;
+
+import java.lang.annotation.*;
+
+@Documented
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface PerformanceBudgets {
+    PerformanceBudget[] value();
+}
@@ -1,29 +1,99 @@
 package org.sindaryn.testifi.generator;
 
 import com.google.auto.service.AutoService;
+import org.sindaryn.apifi.annotations.NonDirectlyExposable;
 import org.sindaryn.apifi.generator.EntitiesInfoCache;
 
 import javax.annotation.processing.*;
 import javax.lang.model.SourceVersion;
 import javax.lang.model.element.TypeElement;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 import static org.sindaryn.testifi.StaticUtils.getGraphQLApiEntities;
 
-
+/**
+ * Registered with gradle as an aggregating incremental processor (see META-INF/gradle), since the
+ * test class generated for an entity also depends on the entities it embeds.
+ */
 @SuppressWarnings("unchecked")
 @SupportedAnnotationTypes({"org.sindaryn.*"})
 @SupportedSourceVersion(SourceVersion.RELEASE_8)
+@SupportedOptions({TestifiOptions.JUNIT, TestifiOptions.BENCHMARKS, TestifiOptions.SCALING, TestifiOptions.STRESS,
+                   TestifiOptions.CACHE, TestifiOptions.CACHE_DIR, TestifiOptions.PARALLEL,
+                   TestifiOptions.METRICS, TestifiOptions.MODE})
 @AutoService(Processor.class)
 public class AnnotationProcessor extends AbstractProcessor {
 
+    //qualified names of the entities sources were generated for in earlier rounds
+    private final Set<String> processedEntities = new HashSet<>();
+    private ProcessorMetrics metrics;
+    //kept across rounds, since descriptor mode writes a single test class and index for all of them
+    private TestDescriptorFactory descriptorFactory;
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        metrics = new ProcessorMetrics(processingEnv);
+        descriptorFactory = new TestDescriptorFactory(processingEnv);
+    }
+
     @Override
     public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnvironment) {
-        Set<? extends TypeElement> entities = getGraphQLApiEntities(annotations, roundEnvironment);
-        EntitiesInfoCache entitiesInfoCache = new EntitiesInfoCache(processingEnv);
-        entitiesInfoCache.setTypeElementMap(entities);
-        GraphQLApiTestFactory testFactory = new GraphQLApiTestFactory(processingEnv, entitiesInfoCache);
-        entities.forEach(testFactory::generateGraphQLServiceTest);
+        if(roundEnvironment.processingOver()){
+            if(new TestifiOptions(processingEnv).isDescriptorMode())
+                descriptorFactory.generateIndex();
+            metrics.report();
+            return false;
+        }
+        metrics.startRound();
+        Set<TypeElement> entities = metrics.time("discovery", () -> {
+            Set<TypeElement> newEntities = new LinkedHashSet<>();
+            for(TypeElement entity : getGraphQLApiEntities(annotations, roundEnvironment))
+                if(!processedEntities.contains(entity.getQualifiedName().toString()))
+                    newEntities.add(entity);
+            return newEntities;
+        });
+        //later rounds usually only see the sources generated in the previous one
+        if(entities.isEmpty()) return false;
+
+        EntitiesInfoCache entitiesInfoCache = metrics.time("entitiesInfoCache", () -> {
+            EntitiesInfoCache infoCache = new EntitiesInfoCache(processingEnv);
+            infoCache.setTypeElementMap(withPreviouslyProcessed(entities));
+            return infoCache;
+        });
+        if(new TestifiOptions(processingEnv).isDescriptorMode()){
+            metrics.time("testDescriptors", () -> descriptorFactory.generateDescriptors(entities, entitiesInfoCache));
+            metrics.count("generated test descriptors", entities.size());
+        }else {
+            GraphQLApiTestFactory testFactory =
+                    new GraphQLApiTestFactory(processingEnv, entitiesInfoCache, new GenerationCache(processingEnv), metrics);
+            metrics.time("testClasses", () -> testFactory.generateGraphQLServiceTests(entities));
+        }
+        EntityAccessorFactory accessorFactory = new EntityAccessorFactory(processingEnv);
+        metrics.time("entityAccessors", () -> entities.forEach(accessorFactory::generateEntityAccessor));
+        metrics.count("generated entity accessors", entities.size());
+        if(new TestifiOptions(processingEnv).isBenchmarks()){
+            GraphQLApiBenchmarkFactory benchmarkFactory = new GraphQLApiBenchmarkFactory(processingEnv, entitiesInfoCache);
+            metrics.time("benchmarks", () -> entities.stream()
+                    .filter(entity -> entity.getAnnotation(NonDirectlyExposable.class) == null)
+                    .forEach(entity -> {
+                        benchmarkFactory.generateGraphQLServiceBenchmark(entity);
+                        metrics.count("generated benchmark classes", 1);
+                    }));
+        }
+        entities.forEach(entity -> processedEntities.add(entity.getQualifiedName().toString()));
         return false;
     }
+
+    //new entities may embed ones processed in earlier rounds, which therefore have to be known to the info cache
+    private Set<TypeElement> withPreviouslyProcessed(Set<TypeElement> entities) {
+        Set<TypeElement> all = new LinkedHashSet<>(entities);
+        for(String processed : processedEntities){
+            TypeElement entity = processingEnv.getElementUtils().getTypeElement(processed);
+            if(entity != null) all.add(entity);
+        }
+        return all;
+    }
 }
@@ -0,0 +1,178 @@
+package org.sindaryn.testifi.generator;
+
+import com.squareup.javapoet.*;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.sindaryn.testifi.service.EntityAccessor;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.*;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import java.util.*;
+
+import static org.sindaryn.datafi.StaticUtils.writeToJavaFile;
+import static org.sindaryn.testifi.service.EntityAccessors.ACCESSOR_SUFFIX;
+
+/**
+ * Generates an {@link EntityAccessor} per entity, which gets and sets fields by name through
+ * the entity's own getters and setters - keeping reflection out of the test hot path.
+ * Covers the fields of every class the entity extends as well, i.e. of a {@code @MappedSuperclass} declaring its id.
+ * Fields without an accessor the entity's package can call (neither declared public, nor generated by lombok at
+ * public or package level) are left to the reflective fallback.
+ */
+@RequiredArgsConstructor
+public class EntityAccessorFactory {
+    @NonNull
+    private ProcessingEnvironment processingEnvironment;
+
+    protected void generateEntityAccessor(TypeElement entity) {
+        String className = entity.getQualifiedName().toString();
+        int lastDot = className.lastIndexOf('.');
+        String packageName = className.substring(0, lastDot);
+        String simpleClassName = className.substring(lastDot + 1);
+        ClassName entityType = ClassName.get(entity);
+
+        MethodSpec.Builder get = MethodSpec.methodBuilder("get")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(entityType, "entity")
+                .addParameter(String.class, "fieldName")
+                .returns(Object.class)
+                .beginControlFlow("switch (fieldName)");
+        MethodSpec.Builder set = MethodSpec.methodBuilder("set")
+                .addAnnotation(Override.class)
+                .addAnnotation(AnnotationSpec.builder(SuppressWarnings.class)
+                        .addMember("value", "$S", "unchecked")
+                        .build())
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(entityType, "entity")
+                .addParameter(String.class, "fieldName")
+                .addParameter(Object.class, "value")
+                .returns(boolean.class)
+                .beginControlFlow("switch (fieldName)");
+        MethodSpec.Builder collectionType = MethodSpec.methodBuilder("collectionType")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(String.class, "fieldName")
+                .returns(ParameterizedTypeName.get(ClassName.get(Class.class),
+                        WildcardTypeName.subtypeOf(Collection.class)))
+                .beginControlFlow("switch (fieldName)");
+
+        //names already covered by a subclass, whose fields shadow those of the same name further up
+        Set<String> fieldNames = new HashSet<>();
+        for(TypeElement type : GenerationCache.hierarchyOf(entity))
+            for(VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())){
+                if(field.getModifiers().contains(Modifier.STATIC)) continue;
+                String fieldName = field.getSimpleName().toString();
+                if(!fieldNames.add(fieldName)) continue;
+                //as seen from the entity, i.e. with the type arguments of a generic superclass substituted
+                TypeMirror fieldType = processingEnvironment.getTypeUtils().asMemberOf((DeclaredType) entity.asType(), field);
+                if(hasAccessor(entity, field, getterName(field), 0))
+                    get.addStatement("case $S: return entity.$L()", fieldName, getterName(field));
+                if(hasAccessor(entity, field, setterName(field), 1))
+                    set.addStatement("case $S: entity.$L(($T) value); return true",
+                            fieldName, setterName(field), TypeName.get(fieldType).box());
+                if(isCollection(fieldType))
+                    collectionType.addStatement("case $S: return $T.class", fieldName,
+                            TypeName.get(processingEnvironment.getTypeUtils().erasure(fieldType)));
+            }
+        get.addStatement("default: return UNKNOWN_FIELD").endControlFlow();
+        set.addStatement("default: return false").endControlFlow();
+        collectionType.addStatement("default: return null").endControlFlow();
+
+        TypeSpec.Builder builder = TypeSpec
+                .classBuilder(simpleClassName + ACCESSOR_SUFFIX)
+                .addModifiers(Modifier.PUBLIC)
+                .addSuperinterface(ParameterizedTypeName.get(ClassName.get(EntityAccessor.class), entityType))
+                .addMethod(get.build())
+                .addMethod(set.build())
+                .addMethod(collectionType.build());
+        writeToJavaFile(simpleClassName, packageName, builder, processingEnvironment, "Entity Accessor");
+    }
+
+    private boolean isCollection(TypeMirror type) {
+        TypeMirror collection = processingEnvironment.getElementUtils()
+                .getTypeElement(Collection.class.getCanonicalName()).asType();
+        return processingEnvironment.getTypeUtils().isAssignable(
+                processingEnvironment.getTypeUtils().erasure(type),
+                processingEnvironment.getTypeUtils().erasure(collection));
+    }
+
+    //either declared public by the entity or a class it extends, or about to be generated by lombok - callable from the entity's package
+    private boolean hasAccessor(TypeElement entity, VariableElement field, String methodName, int paramCount) {
+        for(TypeElement type : GenerationCache.hierarchyOf(entity))
+            for(ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())){
+                if(method.getSimpleName().contentEquals(methodName) &&
+                   method.getParameters().size() == paramCount &&
+                   method.getModifiers().contains(Modifier.PUBLIC))
+                    return true;
+            }
+        boolean isGetter = paramCount == 0;
+        TypeElement declaringType = (TypeElement) field.getEnclosingElement();
+        //lombok generates no setters for final fields - which all fields of a @Value class are
+        if(!isGetter && (field.getModifiers().contains(Modifier.FINAL) || hasLombokAnnotation(declaringType, "lombok.Value")))
+            return false;
+        String annotationName = isGetter ? "lombok.Getter" : "lombok.Setter";
+        //the field's own annotation takes precedence over its class', which in turn takes precedence over @Data / @Value
+        String accessLevel = lombokAccessLevel(field, annotationName);
+        if(accessLevel == null)
+            accessLevel = lombokAccessLevel(declaringType, annotationName);
+        if(accessLevel == null && (hasLombokAnnotation(declaringType, "lombok.Data") ||
+                                   (isGetter && hasLombokAnnotation(declaringType, "lombok.Value"))))
+            accessLevel = "PUBLIC";
+        //NONE generates nothing, whereas PROTECTED and PRIVATE accessors aren't the accessor class' to call
+        return "PUBLIC".equals(accessLevel) ||
+               ("PACKAGE".equals(accessLevel) && isSamePackage(declaringType, entity));
+    }
+
+    //the AccessLevel of the element's lombok annotation by the given name, or null if it isn't annotated with it
+    private String lombokAccessLevel(Element element, String annotationName) {
+        for(AnnotationMirror annotation : element.getAnnotationMirrors()){
+            if(!annotation.getAnnotationType().toString().equals(annotationName)) continue;
+            for(Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> value : annotation.getElementValues().entrySet())
+                if(value.getKey().getSimpleName().contentEquals("value"))
+                    return value.getValue().getValue().toString();
+            return "PUBLIC";
+        }
+        return null;
+    }
+
+    private boolean isSamePackage(Element element, Element other) {
+        return processingEnvironment.getElementUtils().getPackageOf(element)
+                .equals(processingEnvironment.getElementUtils().getPackageOf(other));
+    }
+
+    private boolean hasLombokAnnotation(Element element, String annotationName) {
+        List<? extends AnnotationMirror> annotations = element.getAnnotationMirrors();
+        for(AnnotationMirror annotation : annotations)
+            if(annotation.getAnnotationType().toString().equals(annotationName))
+                return true;
+        return false;
+    }
+
+    //follows lombok's naming conventions, including the special treatment of primitive booleans prefixed with 'is'
+    private String getterName(VariableElement field) {
+        String name = field.getSimpleName().toString();
+        if(field.asType().getKind() == TypeKind.BOOLEAN)
+            return isPrefixed(name) ? name : "is" + capitalize(name);
+        return "get" + capitalize(name);
+    }
+
+    private String setterName(VariableElement field) {
+        String name = field.getSimpleName().toString();
+        if(field.asType().getKind() == TypeKind.BOOLEAN && isPrefixed(name))
+            return "set" + name.substring(2);
+        return "set" + capitalize(name);
+    }
+
+    private boolean isPrefixed(String name) {
+        return name.length() > 2 && name.startsWith("is") && Character.isUpperCase(name.charAt(2));
+    }
+
+    private String capitalize(String name) {
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+}
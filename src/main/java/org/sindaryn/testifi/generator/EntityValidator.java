@@ -0,0 +1,75 @@
+package org.sindaryn.testifi.generator;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.sindaryn.datafi.annotations.GetAllBy;
+import org.sindaryn.datafi.annotations.GetBy;
+import org.sindaryn.datafi.annotations.WithResolver;
+import org.sindaryn.testifi.annotations.PerformanceBudget;
+import org.sindaryn.testifi.service.ResolverCalls;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.tools.Diagnostic;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.sindaryn.apifi.StaticUtils.getFields;
+import static org.sindaryn.apifi.StaticUtils.pascalCaseNameOf;
+import static org.sindaryn.datafi.StaticUtils.toPlural;
+import static org.sindaryn.testifi.StaticUtils.checkForUniquenessConstraints;
+import static org.sindaryn.testifi.StaticUtils.getFieldsOfTypeElement;
+
+/**
+ * Reports the errors an entity's annotations hold - list returning resolvers over unique fields, and unsupported,
+ * incomplete or duplicate performance budgets. Shared by class and descriptor mode, and run on every build, whether
+ * or not the entity's test class can be written from the {@link GenerationCache}.
+ */
+@RequiredArgsConstructor
+public class EntityValidator {
+    @NonNull
+    private ProcessingEnvironment processingEnvironment;
+
+    //whether the entity is free of errors - each error found is reported along the way
+    public boolean validate(TypeElement entity) {
+        boolean valid = true;
+        for(VariableElement field : getFields(entity)){
+            String[] args = field.getSimpleName().toString().split(" ");
+            if(field.getAnnotation(GetAllBy.class) != null)
+                valid &= checkForUniquenessConstraints(entity,
+                        "getAll" + toPlural(pascalCaseNameOf(entity)) + "By" + toPlural(pascalCaseNameOf(field)), args, processingEnvironment);
+            if(field.getAnnotation(GetBy.class) != null)
+                valid &= checkForUniquenessConstraints(entity,
+                        "get" + toPlural(pascalCaseNameOf(entity)) + "By" + pascalCaseNameOf(field), args, processingEnvironment);
+        }
+        for(WithResolver resolver : entity.getAnnotationsByType(WithResolver.class))
+            valid &= checkForUniquenessConstraints(entity, resolver.name(), resolver.args(), processingEnvironment);
+        return validateBudgets(entity) && valid;
+    }
+
+    private boolean validateBudgets(TypeElement entity) {
+        boolean valid = true;
+        Set<String> budgeted = new HashSet<>();
+        for(PerformanceBudget budget : entity.getAnnotationsByType(PerformanceBudget.class)){
+            if(!Arrays.asList(ResolverCalls.READ_RESOLVERS).contains(budget.resolver()))
+                valid = error("Unsupported resolver \"" + budget.resolver() + "\" in performance budget of " +
+                        entity.getSimpleName() + " - supported resolvers are " + Arrays.toString(ResolverCalls.READ_RESOLVERS), entity);
+            boolean requiresField = Arrays.asList("getBy", "getByUnique", "getAllBy").contains(budget.resolver());
+            if(requiresField && !getFieldsOfTypeElement(entity).containsKey(budget.field()))
+                valid = error("Performance budget of " + entity.getSimpleName() + "." + budget.resolver() +
+                        " must name an existing field of " + entity.getSimpleName(), entity);
+            //both would be generated as the same test method
+            if(!budgeted.add(budget.resolver() + "(" + budget.field() + ")"))
+                valid = error("Duplicate performance budget for " + budget.resolver() +
+                        (budget.field().isEmpty() ? "" : " of field " + budget.field()) + " on " + entity.getSimpleName(), entity);
+        }
+        return valid;
+    }
+
+    private boolean error(String message, TypeElement entity) {
+        processingEnvironment.getMessager().printMessage(Diagnostic.Kind.ERROR, message, entity);
+        return false;
+    }
+}
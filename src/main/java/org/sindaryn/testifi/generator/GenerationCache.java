@@ -0,0 +1,203 @@
+package org.sindaryn.testifi.generator;
+
+import com.squareup.javapoet.JavaFile;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.persistence.ManyToMany;
+import javax.persistence.ManyToOne;
+import javax.persistence.OneToMany;
+import javax.persistence.OneToOne;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * On disk cache of generated sources, keyed by a structural fingerprint of the entity they were generated for.
+ * Lives in testifi-cache next to the class output directory (i.e. target/testifi-cache), or in
+ * {@code -Atestifi.cache.dir}. Sources of unchanged entities are written from the cache as is, skipping
+ * JavaPoet altogether. Disabled with {@code -Atestifi.cache=false}.
+ */
+public class GenerationCache {
+
+    private final ProcessingEnvironment processingEnvironment;
+    private final File directory;
+
+    public GenerationCache(ProcessingEnvironment processingEnvironment) {
+        this.processingEnvironment = processingEnvironment;
+        this.directory = new TestifiOptions(processingEnvironment).isCache() ? cacheDirectory() : null;
+    }
+
+    /**
+     * The fields, their types and annotations, the annotations and interfaces of the entity and of every class it
+     * extends, the same for each entity it embeds or references, along with the processor's options and build -
+     * anything the generated source may depend upon.
+     */
+    public String fingerprint(TypeElement entity) {
+        StringBuilder model = new StringBuilder();
+        appendStructure(entity, model);
+        //the generated class also depends on the entities it embeds, i.e. on whether they're directly exposable
+        Map<String, TypeElement> relatedEntities = new TreeMap<>();
+        for(TypeElement type : hierarchyOf(entity))
+            for(VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())){
+                TypeElement related = relatedEntityOf(field);
+                if(related != null && !related.equals(entity))
+                    relatedEntities.put(related.getQualifiedName().toString(), related);
+            }
+        for(TypeElement related : relatedEntities.values())
+            appendStructure(related, model.append("->"));
+        model.append(new TreeMap<>(processingEnvironment.getOptions()));
+        model.append(processorBuild());
+        return sha256(model.toString());
+    }
+
+    private static void appendStructure(TypeElement entity, StringBuilder model) {
+        model.append(entity.getQualifiedName()).append('{');
+        for(TypeElement type : hierarchyOf(entity)){
+            model.append(type.getQualifiedName()).append(type.getInterfaces()).append('|');
+            for(AnnotationMirror annotation : type.getAnnotationMirrors())
+                model.append(annotation).append(';');
+            for(VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())){
+                model.append(field.getSimpleName()).append(':').append(field.asType());
+                for(AnnotationMirror annotation : field.getAnnotationMirrors())
+                    model.append(annotation);
+                model.append(';');
+            }
+        }
+        model.append('}');
+    }
+
+    //the entity followed by every class it extends, up to (but excluding) java.lang.Object
+    static List<TypeElement> hierarchyOf(TypeElement entity) {
+        List<TypeElement> hierarchy = new ArrayList<>();
+        for(TypeElement type = entity; type != null; ){
+            hierarchy.add(type);
+            TypeMirror superclass = type.getSuperclass();
+            type = superclass.getKind() == TypeKind.DECLARED ? (TypeElement) ((DeclaredType) superclass).asElement() : null;
+            if(type != null && type.getQualifiedName().contentEquals(Object.class.getName())) type = null;
+        }
+        return hierarchy;
+    }
+
+    //the entity (or the element type of the entity collection) a relationship field points to, otherwise null
+    private static TypeElement relatedEntityOf(VariableElement field) {
+        if(field.getAnnotation(OneToMany.class) == null && field.getAnnotation(ManyToMany.class) == null &&
+           field.getAnnotation(ManyToOne.class) == null && field.getAnnotation(OneToOne.class) == null)
+            return null;
+        if(field.asType().getKind() != TypeKind.DECLARED) return null;
+        DeclaredType type = (DeclaredType) field.asType();
+        TypeMirror related = type.getTypeArguments().isEmpty() ? type : type.getTypeArguments().get(0);
+        return related.getKind() == TypeKind.DECLARED ? (TypeElement) ((DeclaredType) related).asElement() : null;
+    }
+
+    //the cached source of the given class if its fingerprint still matches, otherwise null. Doesn't touch the filer
+    public String cachedSource(String qualifiedClassName, String fingerprint) {
+        if(directory == null || fingerprint == null) return null;
+        try {
+            File fingerprintFile = new File(directory, qualifiedClassName + ".fingerprint");
+            File sourceFile = new File(directory, qualifiedClassName + ".java");
+            if(!fingerprintFile.exists() || !sourceFile.exists()) return null;
+            if(!fingerprint.equals(new String(Files.readAllBytes(fingerprintFile.toPath()), StandardCharsets.UTF_8)))
+                return null;
+            return new String(Files.readAllBytes(sourceFile.toPath()), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    //writes a source previously returned by cachedSource
+    public void writeCached(String qualifiedClassName, String source) {
+        try {
+            writeSource(qualifiedClassName, source);
+        } catch (IOException e) {
+            processingEnvironment.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "could not write " + qualifiedClassName + ": " + e.getMessage());
+        }
+    }
+
+    //writes the source of a freshly generated class, and caches it under the given fingerprint - unless there's none,
+    //as for entities with errors, which the next build has to report again rather than write their test class from the cache
+    public void write(JavaFile javaFile, String fingerprint) {
+        String qualifiedClassName = javaFile.packageName + "." + javaFile.typeSpec.name;
+        String source = javaFile.toString();
+        try {
+            writeSource(qualifiedClassName, source);
+        } catch (IOException e) {
+            processingEnvironment.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "could not write " + qualifiedClassName + ": " + e.getMessage());
+            return;
+        }
+        if(directory == null || fingerprint == null) return;
+        try {
+            Files.write(new File(directory, qualifiedClassName + ".java").toPath(), source.getBytes(StandardCharsets.UTF_8));
+            Files.write(new File(directory, qualifiedClassName + ".fingerprint").toPath(), fingerprint.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            processingEnvironment.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                    "could not cache " + qualifiedClassName + ": " + e.getMessage());
+        }
+    }
+
+    private void writeSource(String qualifiedClassName, String source) throws IOException {
+        JavaFileObject sourceFile = processingEnvironment.getFiler().createSourceFile(qualifiedClassName);
+        try (Writer writer = sourceFile.openWriter()) {
+            writer.write(source);
+        }
+    }
+
+    private File cacheDirectory() {
+        String configured = processingEnvironment.getOptions().get(TestifiOptions.CACHE_DIR);
+        File buildDirectory = buildDirectory(processingEnvironment);
+        File cacheDirectory = configured != null ? new File(configured) :
+                              buildDirectory != null ? new File(buildDirectory, "testifi-cache") : null;
+        if(cacheDirectory == null || (!cacheDirectory.exists() && !cacheDirectory.mkdirs())) return null;
+        return cacheDirectory;
+    }
+
+    //the parent of the class output directory (i.e. target/classes -> target), or null if it can't be determined
+    static File buildDirectory(ProcessingEnvironment processingEnvironment) {
+        try {
+            URI probe = processingEnvironment.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", "testifi-probe").toUri();
+            File classOutput = new File(probe).getParentFile();
+            return classOutput != null ? classOutput.getParentFile() : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    //changes whenever testifi itself is rebuilt or upgraded
+    private static String processorBuild() {
+        try {
+            File location = new File(GenerationCache.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            return location.getName() + "@" + location.lastModified();
+        } catch (Exception e) {
+            return String.valueOf(GenerationCache.class.getPackage().getImplementationVersion());
+        }
+    }
+
+    private static String sha256(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            return String.format("%064x", new BigInteger(1, digest));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
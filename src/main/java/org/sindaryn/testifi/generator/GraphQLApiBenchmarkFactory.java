@@ -0,0 +1,189 @@
+package org.sindaryn.testifi.generator;
+
+import com.squareup.javapoet.*;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.sindaryn.apifi.annotations.ApiReadOnly;
+import org.sindaryn.apifi.generator.EntitiesInfoCache;
+import org.sindaryn.apifi.generator.FieldSpecs;
+import org.sindaryn.apifi.service.ApiLogic;
+import org.sindaryn.datafi.annotations.GetAllBy;
+import org.sindaryn.datafi.annotations.GetBy;
+import org.sindaryn.datafi.annotations.GetByUnique;
+import org.sindaryn.mockeri.generator.EntityMocker;
+import org.sindaryn.testifi.service.BenchmarkSupport;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestContextManager;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.sindaryn.apifi.StaticUtils.*;
+import static org.sindaryn.datafi.StaticUtils.writeToJavaFile;
+import static org.sindaryn.testifi.StaticUtils.entityMocker;
+import static org.sindaryn.testifi.StaticUtils.isFuzzySearchable;
+
+/**
+ * Generates a JMH benchmark class per entity, which benchmarks the read resolvers
+ * (and, unless the entity is api read only, the add resolvers) of the entity's GraphQL api.
+ * The spring context is booted once per trial via the spring test context framework, and cached across benchmark classes.
+ */
+@RequiredArgsConstructor
+public class GraphQLApiBenchmarkFactory {
+    @NonNull
+    private ProcessingEnvironment processingEnvironment;
+    @NonNull
+    private EntitiesInfoCache entitiesInfoCache;
+
+    private static final String jmh = "org.openjdk.jmh.annotations";
+    private static final ClassName testifiUtils = ClassName.get("org.sindaryn.testifi", "StaticUtils");
+
+    protected void generateGraphQLServiceBenchmark(TypeElement entity) {
+        FieldSpecs fieldSpecs = new FieldSpecs(processingEnvironment, entitiesInfoCache);
+        String className = entity.getQualifiedName().toString();
+        int lastDot = className.lastIndexOf('.');
+        String packageName = className.substring(0, lastDot);
+        String simpleClassName = className.substring(lastDot + 1);
+        String benchmarkName = simpleClassName + "GraphQLServiceBenchmark";
+        ClassName entityType = ClassName.get(entity);
+        TypeName listOfEntities = ParameterizedTypeName.get(ClassName.get(List.class), entityType);
+
+        TypeSpec.Builder builder = TypeSpec
+                .classBuilder(benchmarkName)
+                .addModifiers(Modifier.PUBLIC)
+                .addAnnotation(AnnotationSpec.builder(ClassName.get(jmh, "State"))
+                        .addMember("value", "$T.Benchmark", ClassName.get(jmh, "Scope"))
+                        .build())
+                .addAnnotation(AnnotationSpec.builder(ClassName.get(jmh, "BenchmarkMode"))
+                        .addMember("value", "{$T.Throughput, $T.AverageTime}",
+                                ClassName.get(jmh, "Mode"), ClassName.get(jmh, "Mode"))
+                        .build())
+                .addAnnotation(AnnotationSpec.builder(ClassName.get(jmh, "OutputTimeUnit"))
+                        .addMember("value", "$T.MILLISECONDS", TimeUnit.class)
+                        .build())
+                .addAnnotation(SpringBootTest.class)
+                .addField(fieldSpecs.metaOps(entity))
+                .addField(fieldSpecs.reflectionCache())
+                .addField(fieldSpecs.dataManager(entity))
+                .addField(FieldSpec.builder(EntityMocker.class, entityMocker(), Modifier.PRIVATE)
+                        .addAnnotation(Autowired.class)
+                        .build())
+                .addField(Object.class, "id", Modifier.PRIVATE)
+                .addField(ParameterizedTypeName.get(List.class, Object.class), "ids", Modifier.PRIVATE)
+                .addField(FieldSpec.builder(ParameterizedTypeName.get(Map.class, String.class, Object.class),
+                        "sampleValues", Modifier.PRIVATE, Modifier.FINAL)
+                        .initializer("new $T<>()", HashMap.class)
+                        .build());
+
+        MethodSpec.Builder setUp = MethodSpec.methodBuilder("setUp")
+                .addModifiers(Modifier.PUBLIC)
+                .addAnnotation(AnnotationSpec.builder(ClassName.get(jmh, "Setup"))
+                        .addMember("value", "$T.Trial", ClassName.get(jmh, "Level"))
+                        .build())
+                .addException(Exception.class)
+                .addStatement("new $T(getClass()).prepareTestInstance(this)", TestContextManager.class)
+                .addStatement("$T.seed($T.class, $L, $L)", BenchmarkSupport.class, entityType, dataManagerName(entity), entityMocker())
+                .addStatement("id = $T.sampleId($T.class, $L)", BenchmarkSupport.class, entityType, dataManagerName(entity))
+                .addStatement("ids = new $T<>($T.sampleIds($T.class, $L))", ArrayList.class,
+                        BenchmarkSupport.class, entityType, dataManagerName(entity));
+
+        builder.addMethod(benchmark("getAll")
+                .addStatement("return $T.getAll($T.class, $L, $L, $L, 0, $T.pageSize(), null, null)",
+                        ApiLogic.class, entityType, dataManagerName(entity), reflectionCache, metaOpsName(entity),
+                        testifiUtils)
+                .build());
+        builder.addMethod(benchmark("getById")
+                .addStatement("return $T.getById($T.class, $L, $L, id)",
+                        ApiLogic.class, entityType, dataManagerName(entity), metaOpsName(entity))
+                .build());
+        builder.addMethod(benchmark("getCollectionById")
+                .addStatement("return $T.getCollectionById($L, ids)", ApiLogic.class, dataManagerName(entity))
+                .build());
+        if(isFuzzySearchable(entity)){
+            builder.addField(String.class, "searchTerm", Modifier.PRIVATE);
+            setUp.addStatement("searchTerm = $T.fuzzySearchTerm($T.class, $L, $L)",
+                    BenchmarkSupport.class, entityType, dataManagerName(entity), reflectionCache);
+            builder.addMethod(benchmark("fuzzySearch")
+                    .addStatement("return $T.fuzzySearch($T.class, $L, $L, 0, $T.pageSize(), searchTerm, null, null)",
+                            ApiLogic.class, entityType, dataManagerName(entity), metaOpsName(entity),
+                            testifiUtils)
+                    .build());
+        }
+        for(VariableElement field : getFields(entity)){
+            String fieldName = field.getSimpleName().toString();
+            if(field.getAnnotation(GetBy.class) != null || field.getAnnotation(GetByUnique.class) != null){
+                setUp.addStatement("sampleValues.put($S, $T.sampleValue($T.class, $L, $S, $L))",
+                        fieldName, BenchmarkSupport.class, entityType, dataManagerName(entity), fieldName, reflectionCache);
+                if(field.getAnnotation(GetBy.class) != null)
+                    builder.addMethod(benchmark("getBy" + pascalCaseNameOf(field))
+                            .addStatement("return $T.getBy($L, $L, $S, sampleValues.get($S))",
+                                    ApiLogic.class, dataManagerName(entity), metaOpsName(entity), fieldName, fieldName)
+                            .build());
+                else
+                    builder.addMethod(benchmark("getByUnique" + pascalCaseNameOf(field))
+                            .addStatement("return $T.getByUnique($T.class, $L, $L, $S, sampleValues.get($S))",
+                                    ApiLogic.class, entityType, dataManagerName(entity), metaOpsName(entity), fieldName, fieldName)
+                            .build());
+            }
+            if(field.getAnnotation(GetAllBy.class) != null){
+                String key = fieldName + "List";
+                setUp.addStatement("sampleValues.put($S, $T.sampleValues($T.class, $L, $S, $L))",
+                        key, BenchmarkSupport.class, entityType, dataManagerName(entity), fieldName, reflectionCache);
+                builder.addMethod(benchmark("getAllBy" + pascalCaseNameOf(field))
+                        .addStatement("return $T.getAllBy($L, $L, $S, ($T) sampleValues.get($S))",
+                                ApiLogic.class, dataManagerName(entity), metaOpsName(entity), fieldName, List.class, key)
+                        .build());
+            }
+        }
+        if(entity.getAnnotation(ApiReadOnly.class) == null){
+            //transient instances to add are mocked ahead of each invocation, so that mocking isn't measured
+            builder.addField(listOfEntities, "toAdd", Modifier.PRIVATE);
+            builder.addMethod(MethodSpec.methodBuilder("mockInstancesToAdd")
+                    .addModifiers(Modifier.PUBLIC)
+                    .addAnnotation(AnnotationSpec.builder(ClassName.get(jmh, "Setup"))
+                            .addMember("value", "$T.Invocation", ClassName.get(jmh, "Level"))
+                            .build())
+                    .addStatement("toAdd = $T.transientlyInstantiateCollectionOf($T.class, $L)",
+                            testifiUtils, entityType, entityMocker())
+                    .build());
+            //and whatever was added is deleted again after each invocation
+            builder.addField(listOfEntities, "added", Modifier.PRIVATE);
+            builder.addMethod(MethodSpec.methodBuilder("removeAddedInstances")
+                    .addModifiers(Modifier.PUBLIC)
+                    .addAnnotation(AnnotationSpec.builder(ClassName.get(jmh, "TearDown"))
+                            .addMember("value", "$T.Invocation", ClassName.get(jmh, "Level"))
+                            .build())
+                    .addStatement("$T.removeAdded($L, added, $L)", BenchmarkSupport.class, dataManagerName(entity), metaOpsName(entity))
+                    .addStatement("added = null")
+                    .build());
+            builder.addMethod(benchmark("add")
+                    .addStatement("added = $T.singletonList($T.add($L, toAdd.get(0), $L))",
+                            Collections.class, ApiLogic.class, dataManagerName(entity), metaOpsName(entity))
+                    .addStatement("return added")
+                    .build());
+            builder.addMethod(benchmark("addCollection")
+                    .addStatement("added = $T.addCollection($L, toAdd, $L)",
+                            ApiLogic.class, dataManagerName(entity), metaOpsName(entity))
+                    .addStatement("return added")
+                    .build());
+        }
+        builder.addMethod(setUp.build());
+        writeToJavaFile(simpleClassName, packageName, builder, processingEnvironment, "GraphQL Api Benchmark Class");
+    }
+
+    private MethodSpec.Builder benchmark(String resolverName) {
+        return MethodSpec.methodBuilder(resolverName)
+                .addModifiers(Modifier.PUBLIC)
+                .addAnnotation(ClassName.get(jmh, "Benchmark"))
+                .returns(Object.class);
+    }
+}
@@ -3,7 +3,6 @@ package org.sindaryn.testifi.generator;
 import com.squareup.javapoet.*;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
-import lombok.var;
 import org.junit.runner.RunWith;
 import org.sindaryn.apifi.annotations.ApiReadOnly;
 import org.sindaryn.apifi.annotations.NonDirectlyExposable;
@@ -14,9 +13,17 @@ import org.sindaryn.datafi.annotations.GetBy;
 import org.sindaryn.datafi.annotations.GetByUnique;
 import org.sindaryn.datafi.annotations.WithResolver;
 import org.sindaryn.mockeri.generator.EntityMocker;
+import org.sindaryn.testifi.annotations.PerformanceBudget;
+import org.sindaryn.testifi.service.FixtureSnapshotListener;
+import org.sindaryn.testifi.service.TestClassModel;
+import org.sindaryn.testifi.service.TestClassModel.Budget;
+import org.sindaryn.testifi.service.TestClassModel.EmbeddedField;
+import org.sindaryn.testifi.service.TestClassModel.Resolver;
+import org.sindaryn.testifi.service.TestClassModel.ResolverField;
 import org.sindaryn.testifi.service.TestMethodSpecs;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestExecutionListeners;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import javax.annotation.processing.ProcessingEnvironment;
@@ -31,14 +38,12 @@ import javax.persistence.OneToMany;
 import javax.persistence.OneToOne;
 import javax.transaction.Transactional;
 
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 
-import static org.sindaryn.apifi.StaticUtils.getFields;
-import static org.sindaryn.apifi.StaticUtils.isArchivable;
-import static org.sindaryn.datafi.StaticUtils.writeToJavaFile;
+import static org.sindaryn.apifi.StaticUtils.*;
 import static org.sindaryn.testifi.StaticUtils.entityMocker;
 import static org.sindaryn.testifi.StaticUtils.isFuzzySearchable;
 
@@ -48,133 +53,282 @@ public class GraphQLApiTestFactory {
     private ProcessingEnvironment processingEnvironment;
     @NonNull
     private EntitiesInfoCache entitiesInfoCache;
-    private FieldSpecs fieldSpecs;
-    private TestMethodSpecs testMethodSpecs;
-    private Map<TypeName, FieldSpec> additionalDataManagers;
-
-    protected void generateGraphQLServiceTest(TypeElement entity) {
-        //we'll need these helpers
-        fieldSpecs = new FieldSpecs(processingEnvironment, entitiesInfoCache);
-        testMethodSpecs = new TestMethodSpecs(processingEnvironment);
-        additionalDataManagers = new HashMap<>();
+    @NonNull
+    private GenerationCache generationCache;
+    @NonNull
+    private ProcessorMetrics metrics;
+
+    /**
+     * Everything read off the compiler's model - and every diagnostic - happens on the processing thread,
+     * as javac's symbol completion and type caches aren't thread safe. With {@code -Atestifi.parallel}, only
+     * assembling the test classes from the extracted {@link TestClassModel}s runs on a fork join pool; they're
+     * then written back on the processing thread, in order.
+     */
+    protected void generateGraphQLServiceTests(Collection<TypeElement> entities) {
+        List<ExtractedEntity> extracted = entities.stream().map(this::extract).collect(Collectors.toList());
+        int parallelism = new TestifiOptions(processingEnvironment).parallelism();
+        if(parallelism <= 1 || extracted.size() <= 1){
+            extracted.forEach(entity -> write(assemble(entity)));
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.submit(() -> extracted
+                    .parallelStream()
+                    .map(this::assemble)
+                    .collect(Collectors.toList()))
+                .get()
+                .forEach(this::write);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void write(GeneratedTestClass generated) {
+        long start = System.nanoTime();
+        if(generated.cachedSource != null)
+            generationCache.writeCached(generated.qualifiedName, generated.cachedSource);
+        else
+            generationCache.write(generated.javaFile, generated.fingerprint);
+        metrics.entityWritten(generated.qualifiedName, System.nanoTime() - start);
+    }
+
+    //reads everything the entity's test class depends upon into a model - must run on the processing thread
+    private ExtractedEntity extract(TypeElement entity) {
+        long start = System.nanoTime();
         //get package, class & file names for the graphql api bean to generate
         String className = entity.getQualifiedName().toString();
         int lastDot = className.lastIndexOf('.');
         String packageName = className.substring(0, lastDot);
         String simpleClassName = className.substring(lastDot + 1);
         String serviceName = simpleClassName + "GraphQLServiceTest";
+        //validated on every build, and never cached if invalid - lest the next build write an invalid test class from the cache
+        boolean valid = new EntityValidator(processingEnvironment).validate(entity);
+        //unchanged since the last build, so reuse what was generated back then
+        String fingerprint = valid ? generationCache.fingerprint(entity) : null;
+        String cachedSource = valid ? generationCache.cachedSource(packageName + "." + serviceName, fingerprint) : null;
+        if(cachedSource != null)
+            return new ExtractedEntity(packageName + "." + serviceName, fingerprint, cachedSource, null, System.nanoTime() - start);
+
+        TestifiOptions options = new TestifiOptions(processingEnvironment);
+        FieldSpecs fieldSpecs = new FieldSpecs(processingEnvironment, entitiesInfoCache);
+        List<FieldSpec> fields = new ArrayList<>(Arrays.asList(
+                fieldSpecs.metaOps(entity),
+                fieldSpecs.reflectionCache(),
+                fieldSpecs.dataManager(entity),
+                FieldSpec.builder(EntityMocker.class, entityMocker(), Modifier.PRIVATE)
+                        .addAnnotation(Autowired.class)
+                        .build()));
+        List<EmbeddedField> embeddedFields = new ArrayList<>();
+        Set<TypeName> dataManagedTypes = new HashSet<>();
+        List<ResolverField> getAllByFields = new ArrayList<>(), getByFields = new ArrayList<>(), getByUniqueFields = new ArrayList<>();
+        for(VariableElement field : getFields(entity)){
+            if(isForeignKeyOrKeys(field))
+                embeddedFields.add(embeddedField(field, fieldSpecs, fields, dataManagedTypes));
+            ResolverField resolverField = new ResolverField(field.getSimpleName().toString(), pascalCaseNameOf(field));
+            if(field.getAnnotation(GetAllBy.class) != null)
+                getAllByFields.add(resolverField);
+            if(field.getAnnotation(GetBy.class) != null)
+                getByFields.add(resolverField);
+            else if(field.getAnnotation(GetByUnique.class) != null)
+                getByUniqueFields.add(resolverField);
+        }
+        List<Resolver> resolvers = new ArrayList<>();
+        for(WithResolver resolver : entity.getAnnotationsByType(WithResolver.class))
+            resolvers.add(new Resolver(resolver.name(), Arrays.asList(resolver.args())));
+        TestClassModel model = new TestClassModel(
+                packageName,
+                serviceName,
+                ClassName.get(entity),
+                pascalCaseNameOf(entity),
+                dataManagerName(entity),
+                metaOpsName(entity),
+                tableLockName(entity.asType()),
+                entity.getAnnotation(NonDirectlyExposable.class) == null,
+                entity.getAnnotation(ApiReadOnly.class) != null,
+                isArchivable(entity, processingEnvironment),
+                isFuzzySearchable(entity),
+                options.isJUnit5(),
+                options.isStress(),
+                options.isScaling(),
+                Collections.unmodifiableList(fields),
+                Collections.unmodifiableList(embeddedFields),
+                Collections.unmodifiableList(getAllByFields),
+                Collections.unmodifiableList(getByFields),
+                Collections.unmodifiableList(getByUniqueFields),
+                Collections.unmodifiableList(resolvers),
+                budgets(entity));
+        return new ExtractedEntity(packageName + "." + serviceName, fingerprint, null, model, System.nanoTime() - start);
+    }
+
+    private boolean isForeignKeyOrKeys(VariableElement field) {
+        return
+                field.getAnnotation(OneToMany.class) != null ||
+                        field.getAnnotation(ManyToOne.class) != null ||
+                        field.getAnnotation(OneToOne.class) != null ||
+                        field.getAnnotation(ManyToMany.class) != null;
+    }
+
+    //also adds the fields the embedded field's tests need - a data manager per embedded type, and meta operations per collection
+    private EmbeddedField embeddedField(VariableElement field, FieldSpecs fieldSpecs, List<FieldSpec> fields, Set<TypeName> dataManagedTypes) {
+        boolean collection = field.getAnnotation(OneToMany.class) != null || field.getAnnotation(ManyToMany.class) != null;
+        TypeMirror embeddedType = collection ? ((DeclaredType) field.asType()).getTypeArguments().get(0) : field.asType();
+        if(dataManagedTypes.add(TypeName.get(field.asType())))
+            fields.add(fieldSpecs.dataManager(embeddedType, field.getSimpleName().toString()));
+        //inject autowired metaops for embedded entity collection type
+        if(collection)
+            fields.add(fieldSpecs.embeddedCollectionMetaOps(field));
+        return new EmbeddedField(
+                field.getSimpleName().toString(),
+                pascalCaseNameOf(field),
+                collection ? collectionTypeName(field) : ClassName.get(field.asType()),
+                collection,
+                collection && entitiesInfoCache.exposeDirectly(field),
+                dataManagerName(field),
+                collection ? embeddedCollectionMetaOpsName(field) : null,
+                tableLockName(embeddedType));
+    }
+
+    //embedded fields lock the table of the entity they embed (or of the entities they embed a collection of)
+    private static String tableLockName(TypeMirror entityType) {
+        return "testifi.table." + entityType.toString();
+    }
+
+    //as validated by EntityValidator, which reports duplicates - only the first of which is kept here
+    private static List<Budget> budgets(TypeElement entity) {
+        List<Budget> budgets = new ArrayList<>();
+        Set<String> budgeted = new HashSet<>();
+        for(PerformanceBudget budget : entity.getAnnotationsByType(PerformanceBudget.class))
+            if(budgeted.add(budget.resolver() + "(" + budget.field() + ")"))
+                budgets.add(new Budget(budget.resolver(), budget.field()));
+        return Collections.unmodifiableList(budgets);
+    }
+
+    //assembles the entity's test class from its model alone, and so may run off the processing thread
+    private GeneratedTestClass assemble(ExtractedEntity extracted) {
+        if(extracted.cachedSource != null){
+            metrics.entityBuilt(extracted.qualifiedName, extracted.nanos, 0, true);
+            return new GeneratedTestClass(extracted.qualifiedName, extracted.fingerprint, extracted.cachedSource, null);
+        }
+        long start = System.nanoTime();
+        TestClassModel model = extracted.model;
+        TestMethodSpecs testMethodSpecs = new TestMethodSpecs(model);
         //lay out the skeletal structure..
         TypeSpec.Builder builder = TypeSpec
-                .classBuilder(serviceName)
-                .addModifiers(Modifier.PUBLIC)
-                .addAnnotation(AnnotationSpec.builder(RunWith.class)
+                .classBuilder(model.getClassName())
+                .addModifiers(Modifier.PUBLIC);
+        //@SpringBootTest registers the spring extension on its own when running on junit 5
+        if(!model.isJunit5())
+            builder.addAnnotation(AnnotationSpec.builder(RunWith.class)
                         .addMember("value", "$T.class", SpringRunner.class)
-                        .build())
+                        .build());
+        builder
                 .addAnnotation(SpringBootTest.class)
+                .addAnnotation(AnnotationSpec.builder(TestExecutionListeners.class)
+                        .addMember("listeners", "$T.class", FixtureSnapshotListener.class)
+                        .addMember("mergeMode", "$T.MERGE_WITH_DEFAULTS", TestExecutionListeners.MergeMode.class)
+                        .build())
                 .addAnnotation(Transactional.class);
 
         //if this
-        if(entity.getAnnotation(NonDirectlyExposable.class) == null){
+        if(model.isExposed()){
             builder
-                    .addMethod(testMethodSpecs.generateGetAllEndpointTest(entity))
-                    .addMethod(testMethodSpecs.generateGetByIdEndpointTest(entity))
-                    .addMethod(testMethodSpecs.generateGetCollectionByIdEndpointTest(entity));
-            if(isFuzzySearchable(entity))
-                builder.addMethod(testMethodSpecs.generateFuzzySearchEndpointTest(entity));
+                    .addMethod(testMethodSpecs.generateGetAllEndpointTest())
+                    .addMethod(testMethodSpecs.generateGetByIdEndpointTest())
+                    .addMethod(testMethodSpecs.generateGetCollectionByIdEndpointTest());
+            if(model.isFuzzySearchable())
+                builder.addMethod(testMethodSpecs.generateFuzzySearchEndpointTest());
 
-            if(entity.getAnnotation(ApiReadOnly.class) == null){
+            if(!model.isReadOnly()){
                 builder
-                        .addMethod(testMethodSpecs.generateAddEndpointTest(entity))
-                        .addMethod(testMethodSpecs.generateUpdateEndpointTest(entity))
-                        .addMethod(testMethodSpecs.generateDeleteEndpointTest(entity))
-                        .addMethod(testMethodSpecs.generateAddCollectionEndpointTest(entity))
-                        .addMethod(testMethodSpecs.generateUpdateCollectionEndpointTest(entity))
-                        .addMethod(testMethodSpecs.generateDeleteCollectionEndpointTest(entity));
-
-                if(isArchivable(entity, processingEnvironment)){
-                    builder.addMethod(testMethodSpecs.generateArchiveEndpointTest(entity))
-                            .addMethod(testMethodSpecs.generateDeArchiveEndpointTest(entity))
-                            .addMethod(testMethodSpecs.generateArchiveCollectionEndpointTest(entity))
-                            .addMethod(testMethodSpecs.generateDeArchiveCollectionEndpointTest(entity));
+                        .addMethod(testMethodSpecs.generateAddEndpointTest())
+                        .addMethod(testMethodSpecs.generateUpdateEndpointTest())
+                        .addMethod(testMethodSpecs.generateDeleteEndpointTest())
+                        .addMethod(testMethodSpecs.generateAddCollectionEndpointTest())
+                        .addMethod(testMethodSpecs.generateUpdateCollectionEndpointTest())
+                        .addMethod(testMethodSpecs.generateDeleteCollectionEndpointTest());
+
+                if(model.isArchivable()){
+                    builder.addMethod(testMethodSpecs.generateArchiveEndpointTest())
+                            .addMethod(testMethodSpecs.generateDeArchiveEndpointTest())
+                            .addMethod(testMethodSpecs.generateArchiveCollectionEndpointTest())
+                            .addMethod(testMethodSpecs.generateDeArchiveCollectionEndpointTest());
                 }
+                if(model.isStress())
+                    builder.addMethod(testMethodSpecs.generateStressTest());
             }
         }
-        builder
-                .addField(fieldSpecs.metaOps(entity))
-                .addField(fieldSpecs.reflectionCache())
-                .addField(fieldSpecs.dataManager(entity))
-                .addField(FieldSpec.builder(EntityMocker.class, entityMocker(), Modifier.PRIVATE)
-                        .addAnnotation(Autowired.class)
-                        .build());
+        builder.addFields(model.getFields());
 
-        for(VariableElement field : getFields(entity)){
-            if(isForeignKeyOrKeys(field))
-                addEmbeddedFieldResolvers(entity, field, builder);
-        }
-        addGetByAndGetAllByResolverTests(entity, builder);
-        addCustomResolverTests(entity, builder);
-        writeToJavaFile(simpleClassName, packageName, builder, processingEnvironment, "GraphQL Api Test Class");
+        for(EmbeddedField embedded : model.getEmbeddedFields())
+            addEmbeddedFieldResolvers(builder, testMethodSpecs, embedded);
+        for(ResolverField field : model.getGetAllByFields())
+            builder.addMethod(testMethodSpecs.generateGetAllByEndpointTest(field));
+        for(ResolverField field : model.getGetByFields())
+            builder.addMethod(testMethodSpecs.generateGetByEndpointTest(field));
+        for(ResolverField field : model.getGetByUniqueFields())
+            builder.addMethod(testMethodSpecs.generateGetByUniqueEndpointTest(field));
+        for(Resolver resolver : model.getResolvers())
+            builder.addMethod(testMethodSpecs.generateCustomResolverEndpointTest(resolver));
+        for(Budget budget : model.getBudgets())
+            builder.addMethod(testMethodSpecs.generatePerformanceBudgetTest(budget));
+        if(model.isScaling() && model.isExposed())
+            addScalingTests(builder, testMethodSpecs, model);
+        builder.addMethod(testMethodSpecs.generatePerformanceBaselineCheck());
+        JavaFile javaFile = JavaFile.builder(model.getPackageName(), builder.build()).build();
+        metrics.entityBuilt(extracted.qualifiedName, extracted.nanos + System.nanoTime() - start, javaFile.typeSpec.methodSpecs.size(), false);
+        return new GeneratedTestClass(extracted.qualifiedName, extracted.fingerprint, null, javaFile);
     }
 
-    private void addCustomResolverTests(TypeElement entity, TypeSpec.Builder builder) {
-        WithResolver[] resolvers = entity.getAnnotationsByType(WithResolver.class);
-        if(resolvers == null || resolvers.length <= 0) return;
-        for(WithResolver resolver : resolvers){
-            builder.addMethod(testMethodSpecs.generateCustomResolverEndpointTest(entity, resolver));
-        }
+    private void addScalingTests(TypeSpec.Builder builder, TestMethodSpecs testMethodSpecs, TestClassModel model) {
+        builder
+                .addMethod(testMethodSpecs.generateScalingTest("getAll", ""))
+                .addMethod(testMethodSpecs.generateScalingTest("getCollectionById", ""));
+        if(model.isFuzzySearchable())
+            builder.addMethod(testMethodSpecs.generateScalingTest("fuzzySearch", ""));
+        for(ResolverField field : model.getGetAllByFields())
+            builder.addMethod(testMethodSpecs.generateScalingTest("getAllBy", field.getName()));
     }
 
-    private void addGetByAndGetAllByResolverTests(TypeElement entity, TypeSpec.Builder builder) {
-        for(VariableElement field : getFields(entity)){
-            if(field.getAnnotation(GetAllBy.class) != null)
-                builder.addMethod(testMethodSpecs.generateGetAllByEndpointTest(entity, field));
-            if(field.getAnnotation(GetBy.class) != null)
-                builder.addMethod(testMethodSpecs.generateGetByEndpointTest(entity, field));
-            else if(field.getAnnotation(GetByUnique.class) != null)
-                builder.addMethod(testMethodSpecs.generateGetByUniqueEndpointTest(entity, field));
+    private void addEmbeddedFieldResolvers(TypeSpec.Builder builder, TestMethodSpecs testMethodSpecs, EmbeddedField embedded) {
+        if(!embedded.isCollection()){
+            builder.addMethod(testMethodSpecs.generateGetAsEmbeddedEntityTest(embedded));
+            return;
         }
+        //get as embedded entity collection
+        builder.addMethod(testMethodSpecs.generateGetAsEmbeddedEntityCollectionTest(embedded));
+        //add to collection
+        if(embedded.isExposeDirectly())
+            builder.addMethod(testMethodSpecs.generateAttachExistingToEmbeddedCollectionTest(embedded));
+        else
+            builder.addMethod(testMethodSpecs.generateAddNewToEmbeddedCollectionTest(embedded));
+        //update in collection
+        builder.addMethod(testMethodSpecs.generateUpdateEmbeddedCollectionTest(embedded));
+        //remove from collection
+        builder.addMethod(testMethodSpecs.generateRemoveFromEmbeddedCollectionTest(embedded));
     }
 
-    private boolean isForeignKeyOrKeys(VariableElement field) {
-        return
-                field.getAnnotation(OneToMany.class) != null ||
-                        field.getAnnotation(ManyToOne.class) != null ||
-                        field.getAnnotation(OneToOne.class) != null ||
-                        field.getAnnotation(ManyToMany.class) != null;
-    }
-
-    private void addEmbeddedFieldResolvers(TypeElement entity, VariableElement field, TypeSpec.Builder builder) {
-        //if field is iterable
-        if(field.getAnnotation(OneToMany.class) != null || field.getAnnotation(ManyToMany.class) != null){
-            //get as embedded entity collection
-            builder.addMethod(testMethodSpecs.generateGetAsEmbeddedEntityCollectionTest(field, entity));
-            if(additionalDataManagers.get(ClassName.get(field.asType())) == null){
-                var typeArgs = ((DeclaredType)field.asType()).getTypeArguments();
-                addDataManager(field, builder, typeArgs);
-            }
-            //add to collection
-            if(entitiesInfoCache.exposeDirectly(field)){
-                builder.addMethod(testMethodSpecs.generateAttachExistingToEmbeddedCollectionTest(field, entity));
-            }else {
-                builder.addMethod(testMethodSpecs.generateAddNewToEmbeddedCollectionTest(field, entity));
-            }
-            //update in collection
-            builder.addMethod(testMethodSpecs.generateUpdateEmbeddedCollectionTest(field, entity));
-            //remove from collection
-            builder.addMethod(testMethodSpecs.generateRemoveFromEmbeddedCollectionTest(field, entity));
-            //inject autowired metaops for embedded entity collection type
-            builder.addField(fieldSpecs.embeddedCollectionMetaOps(field));
-        }else {
-            if(additionalDataManagers.get(ClassName.get(field.asType())) == null){
-                addDataManager(field, builder, Collections.singletonList(field.asType()));
-            }
-            builder.addMethod(testMethodSpecs.generateGetAsEmbeddedEntityTest(field, entity));
-        }
+    @RequiredArgsConstructor
+    private static class ExtractedEntity {
+        private final String qualifiedName;
+        private final String fingerprint;
+        //either of these
+        private final String cachedSource;
+        private final TestClassModel model;
+        private final long nanos;
     }
 
-    private void addDataManager(VariableElement field, TypeSpec.Builder builder, List<? extends TypeMirror> typeArgs) {
-        FieldSpec additionalDataManager = fieldSpecs.dataManager(typeArgs.iterator().next(), field.getSimpleName().toString());
-        builder.addField(additionalDataManager);
-        additionalDataManagers.put(ClassName.get(field.asType()), additionalDataManager);
+    @RequiredArgsConstructor
+    private static class GeneratedTestClass {
+        private final String qualifiedName;
+        private final String fingerprint;
+        //either of these
+        private final String cachedSource;
+        private final JavaFile javaFile;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,124 @@
+package org.sindaryn.testifi.generator;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.tools.Diagnostic;
+import java.io.File;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Timings of the annotation processor's phases per round, and of building / writing each entity's test class.
+ * Enabled with {@code -Atestifi.metrics=true}; summarized as a NOTE once processing is over, and written to
+ * testifi-processor-metrics.json in the build directory. When disabled, phases simply run.
+ */
+class ProcessorMetrics {
+
+    private final ProcessingEnvironment processingEnvironment;
+    private final boolean enabled;
+    private final List<Map<String, Long>> rounds = new ArrayList<>();
+    private final Map<String, long[]> entities = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> generated = new ConcurrentHashMap<>();
+
+    ProcessorMetrics(ProcessingEnvironment processingEnvironment) {
+        this.processingEnvironment = processingEnvironment;
+        this.enabled = new TestifiOptions(processingEnvironment).isMetrics();
+    }
+
+    void startRound() {
+        if(enabled) rounds.add(new LinkedHashMap<>());
+    }
+
+    //times a phase of the current round
+    <T> T time(String phase, Supplier<T> work) {
+        if(!enabled || rounds.isEmpty()) return work.get();
+        long start = System.nanoTime();
+        try {
+            return work.get();
+        } finally {
+            rounds.get(rounds.size() - 1).merge(phase, System.nanoTime() - start, Long::sum);
+        }
+    }
+
+    void time(String phase, Runnable work) {
+        time(phase, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    //may be called from several threads
+    void entityBuilt(String entity, long nanos, int methods, boolean cached) {
+        if(!enabled) return;
+        long[] timings = entities.computeIfAbsent(entity, key -> new long[4]);
+        timings[0] += nanos;
+        timings[2] += methods;
+        timings[3] = cached ? 1 : 0;
+        count(cached ? "cached test classes" : "generated test classes", 1);
+        count("generated test methods", methods);
+    }
+
+    void entityWritten(String entity, long nanos) {
+        if(enabled) entities.computeIfAbsent(entity, key -> new long[4])[1] += nanos;
+    }
+
+    void count(String what, int amount) {
+        if(enabled) generated.computeIfAbsent(what, key -> new AtomicInteger()).addAndGet(amount);
+    }
+
+    void report() {
+        if(!enabled || rounds.isEmpty()) return;
+        StringBuilder summary = new StringBuilder("testifi processor metrics:");
+        for (int i = 0; i < rounds.size(); i++) {
+            summary.append("\n  round ").append(i + 1).append(':');
+            rounds.get(i).forEach((phase, nanos) -> summary.append(' ').append(phase).append('=').append(millis(nanos)).append("ms"));
+        }
+        new TreeMap<>(generated).forEach((what, count) -> summary.append("\n  ").append(what).append(": ").append(count));
+        entities.entrySet()
+                .stream()
+                .sorted((a, b) -> Long.compare(b.getValue()[0] + b.getValue()[1], a.getValue()[0] + a.getValue()[1]))
+                .limit(5)
+                .forEach(entity -> summary.append("\n  slowest: ").append(entity.getKey()).append(" build=")
+                        .append(millis(entity.getValue()[0])).append("ms write=").append(millis(entity.getValue()[1])).append("ms"));
+        File file = writeJson();
+        if(file != null) summary.append("\n  written to ").append(file);
+        processingEnvironment.getMessager().printMessage(Diagnostic.Kind.NOTE, summary);
+    }
+
+    private File writeJson() {
+        File buildDirectory = GenerationCache.buildDirectory(processingEnvironment);
+        if(buildDirectory == null) return null;
+        File file = new File(buildDirectory, "testifi-processor-metrics.json");
+        StringBuilder json = new StringBuilder("{\n  \"rounds\": [");
+        for (int i = 0; i < rounds.size(); i++) {
+            json.append(i > 0 ? ",\n    {" : "\n    {");
+            StringJoiner phases = new StringJoiner(", ");
+            rounds.get(i).forEach((phase, nanos) -> phases.add("\"" + phase + "Millis\": " + millis(nanos)));
+            json.append(phases).append('}');
+        }
+        json.append("\n  ],\n  \"generated\": {");
+        StringJoiner counts = new StringJoiner(", ");
+        new TreeMap<>(generated).forEach((what, count) -> counts.add("\"" + what + "\": " + count));
+        json.append(counts).append("},\n  \"entities\": {");
+        StringJoiner entityTimings = new StringJoiner(",");
+        new TreeMap<>(entities).forEach((entity, timings) -> entityTimings.add(
+                "\n    \"" + entity + "\": {\"buildMillis\": " + millis(timings[0]) + ", \"writeMillis\": " + millis(timings[1]) +
+                ", \"methods\": " + timings[2] + ", \"cached\": " + (timings[3] == 1) + "}"));
+        json.append(entityTimings).append("\n  }\n}\n");
+        try (PrintWriter writer = new PrintWriter(file, StandardCharsets.UTF_8.name())) {
+            writer.print(json);
+            return file;
+        } catch (Exception e) {
+            processingEnvironment.getMessager().printMessage(Diagnostic.Kind.WARNING, "could not write " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.1f", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+}
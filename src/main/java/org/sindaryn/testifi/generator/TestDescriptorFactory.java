@@ -0,0 +1,242 @@
+package org.sindaryn.testifi.generator;
+
+import com.squareup.javapoet.*;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.junit.AfterClass;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.sindaryn.apifi.annotations.ApiReadOnly;
+import org.sindaryn.apifi.annotations.NonDirectlyExposable;
+import org.sindaryn.apifi.generator.EntitiesInfoCache;
+import org.sindaryn.datafi.annotations.GetAllBy;
+import org.sindaryn.datafi.annotations.GetBy;
+import org.sindaryn.datafi.annotations.GetByUnique;
+import org.sindaryn.datafi.annotations.WithResolver;
+import org.sindaryn.testifi.service.DescriptorTestCase;
+import org.sindaryn.testifi.service.DescriptorTestEngine;
+import org.sindaryn.testifi.service.FixtureSnapshotListener;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.context.TestExecutionListeners;
+import org.springframework.test.context.junit4.rules.SpringClassRule;
+import org.springframework.test.context.junit4.rules.SpringMethodRule;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
+import javax.persistence.ManyToMany;
+import javax.persistence.ManyToOne;
+import javax.persistence.OneToMany;
+import javax.persistence.OneToOne;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import javax.transaction.Transactional;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+import java.util.stream.Stream;
+
+import static org.sindaryn.apifi.StaticUtils.getFields;
+import static org.sindaryn.apifi.StaticUtils.isArchivable;
+import static org.sindaryn.testifi.StaticUtils.isFuzzySearchable;
+import static org.sindaryn.testifi.service.DescriptorTestEngine.DESCRIPTORS;
+import static org.sindaryn.testifi.service.DescriptorTestEngine.INDEX;
+
+/**
+ * Descriptor mode ({@code -Atestifi.mode=descriptor}): rather than a test class per entity, a compact descriptor
+ * of each entity's resolvers, fields and relationships is written as a class path resource, along with an index
+ * of them and a single parameterized test class, which has the {@link DescriptorTestEngine} turn the descriptors
+ * into test cases at runtime.
+ */
+@RequiredArgsConstructor
+public class TestDescriptorFactory {
+    private static final String TEST_CLASS_NAME = "TestifiDescriptorTest";
+    private static final ClassName jupiterAfterAll = ClassName.get("org.junit.jupiter.api", "AfterAll");
+    private static final ClassName parameterizedTest = ClassName.get("org.junit.jupiter.params", "ParameterizedTest");
+    private static final ClassName methodSource = ClassName.get("org.junit.jupiter.params.provider", "MethodSource");
+
+    @NonNull
+    private ProcessingEnvironment processingEnvironment;
+    //qualified names of all entities descriptors were written for, across rounds
+    private final Set<String> described = new TreeSet<>();
+    private boolean testClassWritten;
+
+    public void generateDescriptors(Collection<TypeElement> entities, EntitiesInfoCache entitiesInfoCache) {
+        for(TypeElement entity : entities){
+            writeResource(DESCRIPTORS + entity.getQualifiedName() + ".properties", describe(entity, entitiesInfoCache), entity);
+            described.add(entity.getQualifiedName().toString());
+        }
+        if(!testClassWritten && !entities.isEmpty()){
+            generateTestClass(entities);
+            testClassWritten = true;
+        }
+    }
+
+    //called once processing is over, as the index covers the entities of all rounds
+    public void generateIndex() {
+        if(described.isEmpty()) return;
+        writeResource(INDEX, String.join("\n", described) + "\n");
+    }
+
+    private String describe(TypeElement entity, EntitiesInfoCache entitiesInfoCache) {
+        //reports the same errors class mode does, rather than leaving them to fail at test runtime
+        new EntityValidator(processingEnvironment).validate(entity);
+        Map<String, String> descriptor = new TreeMap<>();
+        descriptor.put("entity", binaryName(entity));
+        descriptor.put("exposed", String.valueOf(entity.getAnnotation(NonDirectlyExposable.class) == null));
+        descriptor.put("readOnly", String.valueOf(entity.getAnnotation(ApiReadOnly.class) != null));
+        descriptor.put("archivable", String.valueOf(isArchivable(entity, processingEnvironment)));
+        descriptor.put("fuzzySearchable", String.valueOf(isFuzzySearchable(entity)));
+        List<String> getBy = new ArrayList<>(), getByUnique = new ArrayList<>(), getAllBy = new ArrayList<>(), embedded = new ArrayList<>();
+        for(VariableElement field : getFields(entity)){
+            String name = field.getSimpleName().toString();
+            if(field.getAnnotation(GetAllBy.class) != null)
+                getAllBy.add(name);
+            if(field.getAnnotation(GetBy.class) != null)
+                getBy.add(name);
+            else if(field.getAnnotation(GetByUnique.class) != null)
+                getByUnique.add(name);
+            boolean collection = field.getAnnotation(OneToMany.class) != null || field.getAnnotation(ManyToMany.class) != null;
+            if(collection || field.getAnnotation(ManyToOne.class) != null || field.getAnnotation(OneToOne.class) != null){
+                embedded.add(name);
+                descriptor.put("embedded." + name + ".collection", String.valueOf(collection));
+                descriptor.put("embedded." + name + ".type", binaryName(collection ?
+                        ((DeclaredType) field.asType()).getTypeArguments().get(0) :
+                        field.asType()));
+                if(collection)
+                    descriptor.put("embedded." + name + ".exposeDirectly", String.valueOf(entitiesInfoCache.exposeDirectly(field)));
+            }
+        }
+        descriptor.put("getBy", String.join(",", getBy));
+        descriptor.put("getByUnique", String.join(",", getByUnique));
+        descriptor.put("getAllBy", String.join(",", getAllBy));
+        descriptor.put("embedded", String.join(",", embedded));
+        List<String> resolvers = new ArrayList<>();
+        for(WithResolver resolver : entity.getAnnotationsByType(WithResolver.class)){
+            resolvers.add(resolver.name());
+            descriptor.put("resolver." + resolver.name() + ".args", String.join(",", resolver.args()));
+        }
+        descriptor.put("resolvers", String.join(",", resolvers));
+        StringBuilder properties = new StringBuilder();
+        descriptor.forEach((key, value) -> properties.append(key).append('=').append(value).append('\n'));
+        return properties.toString();
+    }
+
+    //Class.forName, as used by DescriptorTestEngine, expects binary names - i.e. Outer$Nested rather than Outer.Nested
+    private String binaryName(TypeElement type) {
+        return processingEnvironment.getElementUtils().getBinaryName(type).toString();
+    }
+
+    private String binaryName(TypeMirror type) {
+        return binaryName((TypeElement) ((DeclaredType) type).asElement());
+    }
+
+    private void generateTestClass(Collection<TypeElement> entities) {
+        boolean junit5 = new TestifiOptions(processingEnvironment).isJUnit5();
+        TypeSpec.Builder builder = TypeSpec
+                .classBuilder(TEST_CLASS_NAME)
+                .addModifiers(Modifier.PUBLIC)
+                .addAnnotation(SpringBootTest.class)
+                .addAnnotation(AnnotationSpec.builder(TestExecutionListeners.class)
+                        .addMember("listeners", "$T.class", FixtureSnapshotListener.class)
+                        .addMember("mergeMode", "$T.MERGE_WITH_DEFAULTS", TestExecutionListeners.MergeMode.class)
+                        .build())
+                .addAnnotation(Transactional.class)
+                .addField(FieldSpec.builder(ApplicationContext.class, "applicationContext", Modifier.PRIVATE)
+                        .addAnnotation(Autowired.class)
+                        .build());
+        if(junit5){
+            builder
+                    .addMethod(MethodSpec.methodBuilder("testCases")
+                            .addModifiers(Modifier.STATIC)
+                            .returns(ParameterizedTypeName.get(Stream.class, DescriptorTestCase.class))
+                            .addStatement("return $T.testCases().stream()", DescriptorTestEngine.class)
+                            .build())
+                    .addMethod(MethodSpec.methodBuilder("test")
+                            .addModifiers(Modifier.PUBLIC)
+                            .addAnnotation(AnnotationSpec.builder(parameterizedTest).addMember("name", "$S", "{0}").build())
+                            .addAnnotation(AnnotationSpec.builder(methodSource).addMember("value", "$S", "testCases").build())
+                            .addParameter(DescriptorTestCase.class, "testCase")
+                            .addException(Exception.class)
+                            .addStatement("testCase.run(applicationContext)")
+                            .build());
+        }else{
+            builder
+                    .addAnnotation(AnnotationSpec.builder(RunWith.class)
+                            .addMember("value", "$T.class", Parameterized.class)
+                            .build())
+                    .addField(FieldSpec.builder(SpringClassRule.class, "springClassRule", Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                            .addAnnotation(ClassRule.class)
+                            .initializer("new $T()", SpringClassRule.class)
+                            .build())
+                    .addField(FieldSpec.builder(SpringMethodRule.class, "springMethodRule", Modifier.PUBLIC, Modifier.FINAL)
+                            .addAnnotation(Rule.class)
+                            .initializer("new $T()", SpringMethodRule.class)
+                            .build())
+                    .addField(FieldSpec.builder(DescriptorTestCase.class, "testCase", Modifier.PUBLIC)
+                            .addAnnotation(Parameterized.Parameter.class)
+                            .build())
+                    .addMethod(MethodSpec.methodBuilder("testCases")
+                            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                            .addAnnotation(AnnotationSpec.builder(Parameterized.Parameters.class)
+                                    .addMember("name", "$S", "{0}")
+                                    .build())
+                            .returns(ParameterizedTypeName.get(Collection.class, Object[].class))
+                            .addStatement("return $T.parameters()", DescriptorTestEngine.class)
+                            .build())
+                    .addMethod(MethodSpec.methodBuilder("test")
+                            .addModifiers(Modifier.PUBLIC)
+                            .addAnnotation(Test.class)
+                            .addException(Exception.class)
+                            .addStatement("testCase.run(applicationContext)")
+                            .build());
+        }
+        builder.addMethod(MethodSpec.methodBuilder("checkPerformanceBaselines")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addAnnotation(junit5 ? jupiterAfterAll : ClassName.get(AfterClass.class))
+                .addStatement("$T.checkPerformanceBaselines()", DescriptorTestEngine.class)
+                .build());
+        JavaFile javaFile = JavaFile.builder(testPackage(entities), builder.build()).build();
+        try {
+            javaFile.writeTo(processingEnvironment.getFiler());
+        } catch (IOException e) {
+            processingEnvironment.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "could not write " + TEST_CLASS_NAME + ": " + e.getMessage());
+        }
+    }
+
+    //the longest package all entities share, so that the test class is found by @SpringBootTest's configuration search
+    private static String testPackage(Collection<TypeElement> entities) {
+        String common = null;
+        for(TypeElement entity : entities){
+            String qualifiedName = entity.getQualifiedName().toString();
+            String packageName = qualifiedName.substring(0, Math.max(0, qualifiedName.lastIndexOf('.')));
+            if(common == null) common = packageName;
+            while (!common.isEmpty() && !(packageName.equals(common) || packageName.startsWith(common + ".")))
+                common = common.contains(".") ? common.substring(0, common.lastIndexOf('.')) : "";
+        }
+        return common == null ? "" : common;
+    }
+
+    private void writeResource(String path, String content, TypeElement... originatingElements) {
+        try {
+            FileObject resource = processingEnvironment.getFiler()
+                    .createResource(StandardLocation.CLASS_OUTPUT, "", path, originatingElements);
+            try (Writer writer = resource.openWriter()) {
+                writer.write(content);
+            }
+        } catch (IOException e) {
+            processingEnvironment.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "could not write " + path + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package org.sindaryn.testifi.generator;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+import javax.annotation.processing.ProcessingEnvironment;
+
+/**
+ * Annotation processor options, passed as {@code -A<option>=<value>} compiler arguments.
+ */
+@RequiredArgsConstructor
+public class TestifiOptions {
+    public static final String JUNIT = "testifi.junit";
+    public static final String BENCHMARKS = "testifi.benchmarks";
+    public static final String SCALING = "testifi.scaling";
+    public static final String STRESS = "testifi.stress";
+    public static final String CACHE = "testifi.cache";
+    public static final String CACHE_DIR = "testifi.cache.dir";
+    public static final String PARALLEL = "testifi.parallel";
+    public static final String METRICS = "testifi.metrics";
+    public static final String MODE = "testifi.mode";
+
+    @NonNull
+    private ProcessingEnvironment processingEnvironment;
+
+    private String option(String name, String defaultValue) {
+        String value = processingEnvironment.getOptions().get(name);
+        return value != null ? value : defaultValue;
+    }
+
+    //'4' (default) or '5'
+    public boolean isJUnit5() {
+        return "5".equals(option(JUNIT, "4"));
+    }
+
+    //generate a JMH benchmark class per entity alongside its test class
+    public boolean isBenchmarks() {
+        return Boolean.parseBoolean(option(BENCHMARKS, "false"));
+    }
+
+    //generate scaling curve tests for the read resolvers of each entity
+    public boolean isScaling() {
+        return Boolean.parseBoolean(option(SCALING, "false"));
+    }
+
+    //generate a concurrent stress test for the mutation resolvers of each mutable entity
+    public boolean isStress() {
+        return Boolean.parseBoolean(option(STRESS, "false"));
+    }
+
+    //reuse sources generated by earlier builds for unchanged entities, see GenerationCache
+    public boolean isCache() {
+        return Boolean.parseBoolean(option(CACHE, "true"));
+    }
+
+    //'false' (default), 'true' for as many threads as there are processors, or a thread count
+    public int parallelism() {
+        String parallel = option(PARALLEL, "false");
+        if(parallel.equals("false")) return 1;
+        if(parallel.equals("true")) return Runtime.getRuntime().availableProcessors();
+        return Integer.parseInt(parallel);
+    }
+
+    //report the processor's own timings, see ProcessorMetrics
+    public boolean isMetrics() {
+        return Boolean.parseBoolean(option(METRICS, "false"));
+    }
+
+    //'classes' (default) for a test class per entity, or 'descriptor' for a single table driven one, see TestDescriptorFactory
+    public boolean isDescriptorMode() {
+        return "descriptor".equals(option(MODE, "classes"));
+    }
+}
@@ -0,0 +1,234 @@
+package org.sindaryn.testifi.instrumentation;
+
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.sindaryn.testifi.MetadataCache;
+import org.sindaryn.testifi.annotations.AllocationBudget;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertTrue;
+import static org.sindaryn.testifi.StaticUtils.reportFile;
+import static org.sindaryn.testifi.StaticUtils.setting;
+
+/**
+ * Latencies of ApiLogic calls made by the generated tests, per entity and resolver, aggregated over
+ * the whole test run. Written to latency/api-latencies.json and latency/api-latencies.txt under
+ * the report directory once the jvm shuts down.
+ * With {@code testifi.allocation=true} (and for any resolver with an {@link AllocationBudget}), the bytes
+ * allocated by the calling thread over the course of each call are recorded as well.
+ */
+@Slf4j
+public abstract class ApiCallMetrics {
+
+    private static final Map<String, Map<String, Histogram>> latencies = new ConcurrentHashMap<>();
+    private static final AtomicBoolean reportOnShutdown = new AtomicBoolean();
+
+    private static final Map<String, Map<String, Tally>> allocations = new ConcurrentHashMap<>();
+    private static final Map<String, Map<String, Tally>> statements = new ConcurrentHashMap<>();
+    private static final boolean allocationProfiling = Boolean.parseBoolean(setting("testifi.allocation", "false"));
+    private static final com.sun.management.ThreadMXBean threads = allocationCounter();
+    //bytes per row, by resolver name as recorded
+    private static final MetadataCache<Map<String, Long>> allocationBudgets =
+            new MetadataCache<>("allocation budgets", ApiCallMetrics::allocationBudgetsOf);
+
+    public static <R> R record(String resolver, Class<?> entity, Supplier<R> call) {
+        Long allocationBudget = allocationBudgets.get(entity).get(resolver);
+        boolean measureAllocation = threads != null && (allocationProfiling || allocationBudget != null);
+        long allocatedBefore = measureAllocation ? allocatedBytes() : 0;
+        long start = System.nanoTime();
+        R result;
+        long allocatedAfter;
+        try {
+            result = call.get();
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            //read before recording, so that the bookkeeping's own allocations aren't attributed to the call
+            allocatedAfter = measureAllocation ? allocatedBytes() : 0;
+            histogram(resolver, entity).recordValue(elapsed);
+        }
+        if(measureAllocation){
+            long allocated = allocatedAfter - allocatedBefore;
+            long rows = rowsOf(result);
+            allocation(resolver, entity).record(allocated, rows);
+            if(allocationBudget != null)
+                assertTrue(
+                        resolver + " of " + entity.getSimpleName() + " allocated " + allocated / rows +
+                        " bytes per row, exceeding its budget of " + allocationBudget + " bytes per row",
+                        allocated / rows <= allocationBudget);
+        }
+        return result;
+    }
+
+    public static Histogram histogram(String resolver, Class<?> entity) {
+        if(reportOnShutdown.compareAndSet(false, true))
+            Runtime.getRuntime().addShutdownHook(new Thread(ApiCallMetrics::writeReports, "testifi-metrics"));
+        return latencies
+                .computeIfAbsent(entity.getSimpleName(), key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(resolver, key -> new ConcurrentHistogram(3));
+    }
+
+    static Tally allocation(String resolver, Class<?> entity) {
+        return allocations
+                .computeIfAbsent(entity.getSimpleName(), key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(resolver, key -> new Tally());
+    }
+
+    //the statements a single call of the resolver sent to the database
+    public static void recordStatements(String resolver, Class<?> entity, StatementCapture.Capture capture) {
+        if(!StatementCapture.isInstalled()) return;
+        statements
+                .computeIfAbsent(entity.getSimpleName(), key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(resolver, key -> new Tally())
+                .record(capture.totalRoundTrips(), 1);
+    }
+
+    //average database round trips per call of the resolver so far, or -1 if statements weren't captured
+    public static long statementsPerCall(String entity, String resolver) {
+        Tally calls = statements.getOrDefault(entity, new HashMap<>()).get(resolver);
+        return calls == null ? -1 : calls.perUnit();
+    }
+
+    //average bytes allocated per row returned by the resolver so far, or -1 if allocation wasn't measured
+    public static long bytesPerRow(String entity, String resolver) {
+        Tally allocation = allocations.getOrDefault(entity, new HashMap<>()).get(resolver);
+        return allocation == null ? -1 : allocation.perUnit();
+    }
+
+    //a sorted copy of the latencies recorded so far, by entity and resolver
+    public static Map<String, Map<String, Histogram>> snapshot() {
+        Map<String, Map<String, Histogram>> snapshot = new TreeMap<>();
+        latencies.forEach((entity, resolvers) -> {
+            Map<String, Histogram> copies = new TreeMap<>();
+            resolvers.forEach((resolver, histogram) -> copies.put(resolver, histogram.copy()));
+            snapshot.put(entity, copies);
+        });
+        return snapshot;
+    }
+
+    private static void writeReports() {
+        Map<String, Map<String, Histogram>> snapshot = snapshot();
+        if(snapshot.isEmpty()) return;
+        try {
+            write(reportFile("latency", "api-latencies.json"), json(snapshot));
+            write(reportFile("latency", "api-latencies.txt"), table(snapshot));
+        } catch (Exception e) {
+            log.warn("could not write api latency reports", e);
+        }
+    }
+
+    private static void write(File file, String content) throws Exception {
+        try (PrintWriter writer = new PrintWriter(file, StandardCharsets.UTF_8.name())) {
+            writer.print(content);
+        }
+    }
+
+    //all latencies in microseconds
+    static String json(Map<String, Map<String, Histogram>> snapshot) {
+        StringBuilder json = new StringBuilder("{\n");
+        int entities = 0;
+        for(Map.Entry<String, Map<String, Histogram>> entity : snapshot.entrySet()){
+            if(entities++ > 0) json.append(",\n");
+            json.append("  \"").append(entity.getKey()).append("\": {\n");
+            int resolvers = 0;
+            for(Map.Entry<String, Histogram> resolver : entity.getValue().entrySet()){
+                if(resolvers++ > 0) json.append(",\n");
+                Histogram histogram = resolver.getValue();
+                json.append("    \"").append(resolver.getKey().replace("\"", "\\\"")).append("\": {")
+                    .append("\"count\": ").append(histogram.getTotalCount())
+                    .append(", \"mean\": ").append(String.format("%.1f", histogram.getMean() / 1000))
+                    .append(", \"p50\": ").append(micros(histogram, 50))
+                    .append(", \"p90\": ").append(micros(histogram, 90))
+                    .append(", \"p99\": ").append(micros(histogram, 99))
+                    .append(", \"p999\": ").append(micros(histogram, 99.9))
+                    .append(", \"max\": ").append(TimeUnit.NANOSECONDS.toMicros(histogram.getMaxValue()));
+                long bytesPerRow = bytesPerRow(entity.getKey(), resolver.getKey());
+                if(bytesPerRow >= 0)
+                    json.append(", \"bytesPerRow\": ").append(bytesPerRow);
+                json.append('}');
+            }
+            json.append("\n  }");
+        }
+        return json.append("\n}\n").toString();
+    }
+
+    static String table(Map<String, Map<String, Histogram>> snapshot) {
+        StringBuilder table = new StringBuilder(String.format("%-24s %-40s %8s %10s %10s %10s %10s %10s %14s%n",
+                "entity", "resolver", "count", "p50 µs", "p90 µs", "p99 µs", "p99.9 µs", "max µs", "bytes / row"));
+        snapshot.forEach((entity, resolvers) -> resolvers.forEach((resolver, histogram) -> {
+            long bytesPerRow = bytesPerRow(entity, resolver);
+            table.append(String.format("%-24s %-40s %8d %10d %10d %10d %10d %10d %14s%n",
+                    entity, resolver, histogram.getTotalCount(),
+                    micros(histogram, 50), micros(histogram, 90), micros(histogram, 99), micros(histogram, 99.9),
+                    TimeUnit.NANOSECONDS.toMicros(histogram.getMaxValue()),
+                    bytesPerRow >= 0 ? String.valueOf(bytesPerRow) : "-"));
+        }));
+        return table.toString();
+    }
+
+    private static long micros(Histogram histogram, double percentile) {
+        return TimeUnit.NANOSECONDS.toMicros(histogram.getValueAtPercentile(percentile));
+    }
+
+    private static Map<String, Long> allocationBudgetsOf(Class<?> entity) {
+        Map<String, Long> budgets = new HashMap<>();
+        for(AllocationBudget budget : entity.getAnnotationsByType(AllocationBudget.class))
+            budgets.put(budget.resolver() + (budget.field().isEmpty() ? "" : "(" + budget.field() + ")"), budget.bytesPerRow());
+        return budgets;
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if(!(threads instanceof com.sun.management.ThreadMXBean)) return null;
+        com.sun.management.ThreadMXBean allocationCounter = (com.sun.management.ThreadMXBean) threads;
+        if(!allocationCounter.isThreadAllocatedMemorySupported()) return null;
+        if(!allocationCounter.isThreadAllocatedMemoryEnabled()) allocationCounter.setThreadAllocatedMemoryEnabled(true);
+        return allocationCounter;
+    }
+
+    private static long allocatedBytes() {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    //collections count as one row per element, anything else as a single row
+    private static long rowsOf(Object result) {
+        return Math.max(1, countRows(result));
+    }
+
+    //getAsEmbeddedCollection returns a collection per owner, whose rows are what's fetched
+    private static long countRows(Object result) {
+        if(!(result instanceof Collection)) return 1;
+        long rows = 0;
+        for(Object element : (Collection<?>) result)
+            rows += element instanceof Collection ? ((Collection<?>) element).size() : 1;
+        return rows;
+    }
+
+    //a running total over a number of units, i.e. bytes over rows
+    static class Tally {
+        private final LongAdder total = new LongAdder();
+        private final LongAdder units = new LongAdder();
+
+        void record(long amount, long unitCount) {
+            total.add(amount);
+            units.add(unitCount);
+        }
+        long perUnit() {
+            long unitCount = units.sum();
+            return unitCount == 0 ? 0 : total.sum() / unitCount;
+        }
+    }
+}
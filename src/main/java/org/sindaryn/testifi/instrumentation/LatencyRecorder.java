@@ -0,0 +1,40 @@
+package org.sindaryn.testifi.instrumentation;
+
+import org.HdrHistogram.Histogram;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records latencies in nanoseconds into an (auto resizing, 3 significant digit) HdrHistogram
+ * and reports percentiles over them. Not thread safe.
+ */
+public class LatencyRecorder {
+
+    private final Histogram histogram = new Histogram(3);
+
+    public void record(long nanos) {
+        histogram.recordValue(Math.max(0, nanos));
+    }
+
+    public void add(LatencyRecorder other) {
+        histogram.add(other.histogram);
+    }
+
+    public long getCount() {
+        return histogram.getTotalCount();
+    }
+
+    public long percentile(double percentile, TimeUnit unit) {
+        if(getCount() == 0) return 0;
+        return unit.convert(histogram.getValueAtPercentile(percentile), TimeUnit.NANOSECONDS);
+    }
+
+    public String summary(TimeUnit unit) {
+        String suffix = " " + unit.name().toLowerCase();
+        return "count=" + getCount() +
+                ", p50=" + percentile(50, unit) + suffix +
+                ", p90=" + percentile(90, unit) + suffix +
+                ", p99=" + percentile(99, unit) + suffix +
+                ", max=" + percentile(100, unit) + suffix;
+    }
+}
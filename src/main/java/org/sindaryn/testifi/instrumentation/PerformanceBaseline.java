@@ -0,0 +1,168 @@
+package org.sindaryn.testifi.instrumentation;
+
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.fail;
+import static org.sindaryn.testifi.StaticUtils.setting;
+
+/**
+ * Per resolver metrics (latency percentiles, statements per call, bytes allocated per row) of an entity,
+ * persisted to or compared against a baseline file checked in with the project - {@code testifi-baseline.properties}
+ * by default. Keys are of the form {@code <Entity>.<resolver>.<metric>}. Latency percentiles are only recorded and
+ * compared for resolvers timed at least {@code testifi.baseline.min-samples} times, as those of a handful of calls
+ * are mostly noise; the number of timed calls is recorded as {@code samples}. Driven by {@code testifi.baseline}:
+ * <ul>
+ *     <li>{@code off} (default): nothing happens,</li>
+ *     <li>{@code record}: the entity's current metrics replace its entries in the baseline file,</li>
+ *     <li>{@code compare}: the entity's current metrics are compared with its baseline entries, and regressions
+ *     beyond the configured tolerances either fail ({@code testifi.baseline.on-regression=fail}) or are logged.</li>
+ * </ul>
+ */
+@Slf4j
+public abstract class PerformanceBaseline {
+
+    //2: latencies of too few samples are left out, and sample counts are recorded
+    public static final int FORMAT_VERSION = 2;
+    private static final String VERSION_KEY = "testifi.baseline.version";
+    private static final String[] METRICS = {"samples", "p50Micros", "p99Micros", "statementsPerCall", "bytesPerRow"};
+
+    //called once all of an entity's tests have run
+    public static synchronized void check(Class<?> entity) {
+        String mode = setting("testifi.baseline", "off");
+        if(mode.equals("off")) return;
+        Map<String, Long> current = currentMetrics(entity.getSimpleName());
+        if(current.isEmpty()) return;
+        File file = baselineFile();
+        Map<String, Long> baseline = load(file);
+        switch (mode){
+            case "record":
+                baseline.keySet().removeIf(key -> key.startsWith(entity.getSimpleName() + "."));
+                baseline.putAll(current);
+                store(baseline, file);
+                log.info("recorded performance baseline of " + entity.getSimpleName() + " to " + file);
+                break;
+            case "compare":
+                compare(entity.getSimpleName(), baseline, current);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown testifi.baseline mode '" + mode + "', expected off, record or compare");
+        }
+    }
+
+    static Map<String, Long> currentMetrics(String entity) {
+        Map<String, Long> metrics = new TreeMap<>();
+        Map<String, Histogram> resolvers = ApiCallMetrics.snapshot().getOrDefault(entity, Collections.emptyMap());
+        long minSamples = Long.parseLong(setting("testifi.baseline.min-samples", "20"));
+        resolvers.forEach((resolver, histogram) -> {
+            String prefix = entity + "." + resolver + ".";
+            metrics.put(prefix + "samples", histogram.getTotalCount());
+            if(histogram.getTotalCount() >= minSamples){
+                metrics.put(prefix + "p50Micros", TimeUnit.NANOSECONDS.toMicros(histogram.getValueAtPercentile(50)));
+                metrics.put(prefix + "p99Micros", TimeUnit.NANOSECONDS.toMicros(histogram.getValueAtPercentile(99)));
+            }
+            long statements = ApiCallMetrics.statementsPerCall(entity, resolver);
+            if(statements >= 0) metrics.put(prefix + "statementsPerCall", statements);
+            long bytesPerRow = ApiCallMetrics.bytesPerRow(entity, resolver);
+            if(bytesPerRow >= 0) metrics.put(prefix + "bytesPerRow", bytesPerRow);
+        });
+        return metrics;
+    }
+
+    private static void compare(String entity, Map<String, Long> baseline, Map<String, Long> current) {
+        StringBuilder table = new StringBuilder(String.format("%n%-60s %12s %12s %9s  %s%n",
+                entity + " vs. baseline", "baseline", "current", "change", ""));
+        List<String> regressions = new ArrayList<>();
+        for(Map.Entry<String, Long> metric : current.entrySet()){
+            Long expected = baseline.get(metric.getKey());
+            if(expected == null || isLatency(metric.getKey()) && !hasEnoughSamples(metric.getKey(), baseline)) continue;
+            long actual = metric.getValue();
+            boolean regressed = isRegression(metric.getKey(), expected, actual);
+            if(regressed) regressions.add(metric.getKey());
+            table.append(String.format("%-60s %12d %12d %8s%%  %s%n",
+                    metric.getKey().substring(entity.length() + 1), expected, actual,
+                    expected == 0 ? "-" : String.format("%+.1f", 100.0 * (actual - expected) / expected),
+                    regressed ? "REGRESSED" : ""));
+        }
+        if(regressions.isEmpty()){
+            log.info(table.toString());
+            return;
+        }
+        String message = regressions.size() + " performance regressions of " + entity + ":" + table;
+        if(setting("testifi.baseline.on-regression", "fail").equals("fail"))
+            fail(message);
+        log.warn(message);
+    }
+
+    private static boolean isLatency(String key) {
+        return key.endsWith(".p50Micros") || key.endsWith(".p99Micros");
+    }
+
+    //a baseline recorded under a lower testifi.baseline.min-samples may hold latencies of too few samples
+    private static boolean hasEnoughSamples(String key, Map<String, Long> baseline) {
+        Long samples = baseline.get(key.substring(0, key.lastIndexOf('.')) + ".samples");
+        return samples != null && samples >= Long.parseLong(setting("testifi.baseline.min-samples", "20"));
+    }
+
+    private static boolean isRegression(String key, long expected, long actual) {
+        String metric = key.substring(key.lastIndexOf('.') + 1);
+        double tolerance;
+        switch (metric){
+            case "p50Micros":
+            case "p99Micros":
+                //differences this small are noise rather than regressions
+                if(actual - expected < Long.parseLong(setting("testifi.baseline.latency.min-micros", "500"))) return false;
+                tolerance = Double.parseDouble(setting("testifi.baseline.tolerance.latency", "0.25"));
+                break;
+            case "statementsPerCall":
+                tolerance = Double.parseDouble(setting("testifi.baseline.tolerance.statements", "0"));
+                break;
+            case "bytesPerRow":
+                tolerance = Double.parseDouble(setting("testifi.baseline.tolerance.allocation", "0.1"));
+                break;
+            default:
+                return false;
+        }
+        return actual > expected * (1 + tolerance);
+    }
+
+    private static File baselineFile() {
+        return new File(setting("testifi.baseline.file", "testifi-baseline.properties"));
+    }
+
+    private static Map<String, Long> load(File file) {
+        Map<String, Long> baseline = new TreeMap<>();
+        if(!file.exists()) return baseline;
+        Properties properties = new Properties();
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        String version = properties.getProperty(VERSION_KEY);
+        if(!String.valueOf(FORMAT_VERSION).equals(version)){
+            log.warn("ignoring performance baseline " + file + " of format version " + version +
+                     " (expected " + FORMAT_VERSION + "), record a new one with testifi.baseline=record");
+            return baseline;
+        }
+        for(String key : properties.stringPropertyNames())
+            if(!key.equals(VERSION_KEY)) baseline.put(key, Long.parseLong(properties.getProperty(key).trim()));
+        return baseline;
+    }
+
+    //sorted, so that the file diffs cleanly under version control
+    private static void store(Map<String, Long> baseline, File file) {
+        try (PrintWriter writer = new PrintWriter(file, StandardCharsets.UTF_8.name())) {
+            writer.println("# testifi performance baseline - metrics: " + String.join(", ", METRICS));
+            writer.println(VERSION_KEY + "=" + FORMAT_VERSION);
+            new TreeMap<>(baseline).forEach((key, value) -> writer.println(key + "=" + value));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
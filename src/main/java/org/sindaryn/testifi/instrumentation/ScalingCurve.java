@@ -0,0 +1,60 @@
+package org.sindaryn.testifi.instrumentation;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Median latencies of a resolver measured at growing table sizes, along with the
+ * exponent k of the best fitting power curve {@code latency ~ rows^k} (a least squares
+ * fit over the log-log points). k ~ 1 is linear, k ~ 2 is quadratic.
+ */
+public class ScalingCurve {
+
+    private final List<long[]> points = new ArrayList<>();
+
+    public void add(long rows, long medianNanos) {
+        points.add(new long[]{rows, Math.max(1, medianNanos)});
+    }
+
+    //fewer than two and there's no curve to fit - e.g. when the table already exceeded every size
+    public long distinctSizes() {
+        return points.stream().mapToLong(point -> point[0]).distinct().count();
+    }
+
+    public double exponent() {
+        int n = points.size();
+        if(n < 2) return 0;
+        double sumX = 0, sumY = 0, sumXY = 0, sumXX = 0;
+        for(long[] point : points){
+            double x = Math.log(point[0]), y = Math.log(point[1]);
+            sumX += x;
+            sumY += y;
+            sumXY += x * y;
+            sumXX += x * x;
+        }
+        double denominator = n * sumXX - sumX * sumX;
+        return denominator == 0 ? 0 : (n * sumXY - sumX * sumY) / denominator;
+    }
+
+    public void writeCsv(File file) {
+        try (PrintWriter writer = new PrintWriter(file, StandardCharsets.UTF_8.name())) {
+            writer.println("rows,median_micros");
+            for(long[] point : points)
+                writer.println(point[0] + "," + point[1] / 1000);
+            writer.println("# exponent=" + String.format("%.3f", exponent()));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder curve = new StringBuilder();
+        for(long[] point : points)
+            curve.append("\n\t").append(point[0]).append(" rows: ").append(point[1] / 1000).append(" microseconds");
+        return String.format("exponent %.2f", exponent()) + curve;
+    }
+}
@@ -0,0 +1,148 @@
+package org.sindaryn.testifi.instrumentation;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Records the sql statements issued by the current thread while a {@link Capture} is active.
+ * Statements are reported by the {@link StatementCapturingDataSource}, which testifi wraps around
+ * the application's data source (see {@link StatementCaptureContextCustomizerFactory}).
+ */
+@Slf4j
+public abstract class StatementCapture {
+
+    public enum Kind { SELECT, INSERT, UPDATE, DELETE, OTHER }
+
+    private static volatile boolean installed;
+    private static final ThreadLocal<Capture> active = new ThreadLocal<>();
+
+    static void markInstalled() {
+        installed = true;
+    }
+    //false if the data source isn't wrapped, in which case captures remain empty
+    public static boolean isInstalled() {
+        return installed;
+    }
+
+    public static Capture start() {
+        Capture capture = new Capture(active.get());
+        active.set(capture);
+        return capture;
+    }
+
+    public static <R> R capture(Capture capture, Supplier<R> call) {
+        try {
+            return call.get();
+        } finally {
+            capture.stop();
+        }
+    }
+
+    public static void log(String label, Capture capture) {
+        if(installed) log.info("{}: {}", label, capture);
+    }
+
+    static void statementExecuted(String sql) {
+        Capture capture = active.get();
+        if(capture != null) capture.recordExecution(sql, 1);
+    }
+    static void batchExecuted(String sql, int batchSize) {
+        Capture capture = active.get();
+        if(capture != null) capture.recordBatch(sql, batchSize);
+    }
+
+    public static Kind kindOf(String sql) {
+        String trimmed = sql.trim();
+        int end = 0;
+        while (end < trimmed.length() && Character.isLetter(trimmed.charAt(end))) end++;
+        switch (trimmed.substring(0, end).toLowerCase()){
+            case "select": return Kind.SELECT;
+            case "insert": return Kind.INSERT;
+            case "update": return Kind.UPDATE;
+            case "delete": return Kind.DELETE;
+            default: return Kind.OTHER;
+        }
+    }
+
+    /**
+     * The statements issued between {@link StatementCapture#start()} and {@link #stop()}.
+     * Captures nest - statements are reported to every enclosing capture as well.
+     */
+    public static class Capture {
+        private final Capture parent;
+        private final List<String> statements = new ArrayList<>();
+        private final Map<Kind, Integer> roundTrips = new EnumMap<>(Kind.class);
+        private final Map<Kind, Integer> rows = new EnumMap<>(Kind.class);
+        private int batches;
+        private boolean stopped;
+
+        private Capture(Capture parent) {
+            this.parent = parent;
+        }
+
+        public void stop() {
+            if(stopped) return;
+            stopped = true;
+            if(active.get() == this) active.set(parent);
+        }
+
+        private void recordExecution(String sql, int affectedRows) {
+            if(!stopped){
+                statements.add(sql);
+                roundTrips.merge(kindOf(sql), 1, Integer::sum);
+                rows.merge(kindOf(sql), affectedRows, Integer::sum);
+            }
+            if(parent != null) parent.recordExecution(sql, affectedRows);
+        }
+        private void recordBatch(String sql, int batchSize) {
+            if(!stopped){
+                statements.add(sql);
+                roundTrips.merge(kindOf(sql), 1, Integer::sum);
+                rows.merge(kindOf(sql), batchSize, Integer::sum);
+                batches++;
+            }
+            if(parent != null) parent.recordBatch(sql, batchSize);
+        }
+
+        public List<String> getStatements() {
+            return Collections.unmodifiableList(statements);
+        }
+        //the number of times statements of the given kind were sent to the database - a jdbc batch counts once
+        public int roundTrips(Kind kind) {
+            return roundTrips.getOrDefault(kind, 0);
+        }
+        //the number of statements of the given kind - every statement within a jdbc batch counts
+        public int statements(Kind kind) {
+            return rows.getOrDefault(kind, 0);
+        }
+        public int totalRoundTrips() {
+            int total = 0;
+            for(int count : roundTrips.values()) total += count;
+            return total;
+        }
+        public int getBatches() {
+            return batches;
+        }
+
+        //distinct statements along with how often each was issued, most frequent first
+        public String report() {
+            Map<String, Integer> counts = new LinkedHashMap<>();
+            for(String statement : statements) counts.merge(statement, 1, Integer::sum);
+            StringBuilder report = new StringBuilder();
+            counts.entrySet()
+                  .stream()
+                  .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                  .forEach(entry -> report.append("\n\t").append(entry.getValue()).append(" x ").append(entry.getKey()));
+            return report.toString();
+        }
+
+        @Override
+        public String toString() {
+            return "SELECT=" + roundTrips(Kind.SELECT) + ", INSERT=" + roundTrips(Kind.INSERT) +
+                   ", UPDATE=" + roundTrips(Kind.UPDATE) + ", DELETE=" + roundTrips(Kind.DELETE) +
+                   ", batches=" + batches;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package org.sindaryn.testifi.instrumentation;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.context.ContextConfigurationAttributes;
+import org.springframework.test.context.ContextCustomizer;
+import org.springframework.test.context.ContextCustomizerFactory;
+import org.springframework.test.context.MergedContextConfiguration;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+/**
+ * Wraps the data source(s) of test application contexts in a {@link StatementCapturingDataSource}.
+ * Registered via spring.factories with spring-test, which only consults it when building test contexts -
+ * the application's own context is never touched. Can be switched off with {@code testifi.statement-capture=false}.
+ */
+public class StatementCaptureContextCustomizerFactory implements ContextCustomizerFactory {
+
+    @Override
+    public ContextCustomizer createContextCustomizer(Class<?> testClass, List<ContextConfigurationAttributes> configAttributes) {
+        return new StatementCaptureContextCustomizer();
+    }
+
+    private static class StatementCaptureContextCustomizer implements ContextCustomizer {
+
+        @Override
+        public void customizeContext(ConfigurableApplicationContext context, MergedContextConfiguration mergedConfig) {
+            context.getBeanFactory().addBeanPostProcessor(new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    //read once the data source is created, by which time all property sources are in place
+                    boolean enabled = context.getEnvironment().getProperty("testifi.statement-capture", Boolean.class, true);
+                    return enabled && bean instanceof DataSource ? StatementCapturingDataSource.wrap((DataSource) bean) : bean;
+                }
+            });
+        }
+
+        //part of the test context cache key - all instances are interchangeable
+        @Override
+        public boolean equals(Object other) {
+            return other != null && other.getClass() == getClass();
+        }
+
+        @Override
+        public int hashCode() {
+            return getClass().hashCode();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package org.sindaryn.testifi.instrumentation;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.aop.framework.ProxyFactory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Wraps a {@link DataSource} in a proxy which reports every statement executed through its connections
+ * to the {@link StatementCapture}. The proxy subclasses the data source's own class where possible,
+ * so that it can still be injected as such (i.e. as a {@code HikariDataSource}).
+ */
+public abstract class StatementCapturingDataSource {
+
+    public static DataSource wrap(DataSource dataSource) {
+        StatementCapture.markInstalled();
+        ProxyFactory proxyFactory = new ProxyFactory(dataSource);
+        proxyFactory.setProxyTargetClass(!Modifier.isFinal(dataSource.getClass().getModifiers()));
+        proxyFactory.addAdvice((MethodInterceptor) invocation -> {
+            Object result = invocation.proceed();
+            return result instanceof Connection ? wrapConnection((Connection) result) : result;
+        });
+        return (DataSource) proxyFactory.getProxy(dataSource.getClass().getClassLoader());
+    }
+
+    private static Connection wrapConnection(Connection connection) {
+        return proxy(Connection.class, connection, (target, method, args) -> {
+            Object result = invoke(target, method, args);
+            if(result instanceof CallableStatement)
+                return wrapStatement(CallableStatement.class, (Statement) result, (String) args[0]);
+            if(result instanceof PreparedStatement)
+                return wrapStatement(PreparedStatement.class, (Statement) result, (String) args[0]);
+            if(result instanceof Statement)
+                return wrapStatement(Statement.class, (Statement) result, null);
+            return result;
+        });
+    }
+
+    private static <S extends Statement> S wrapStatement(Class<S> type, Statement statement, String preparedSql) {
+        List<String> batch = new ArrayList<>();
+        return proxy(type, type.cast(statement), (target, method, args) -> {
+            String name = method.getName();
+            if(name.equals("addBatch"))
+                batch.add(args != null && args.length == 1 ? (String) args[0] : preparedSql);
+            else if(name.equals("clearBatch"))
+                batch.clear();
+            Object result = invoke(target, method, args);
+            if(name.equals("executeBatch") || name.equals("executeLargeBatch")){
+                if(!batch.isEmpty()) StatementCapture.batchExecuted(batch.get(0), batch.size());
+                batch.clear();
+            }else if(name.startsWith("execute")){
+                String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : preparedSql;
+                if(sql != null) StatementCapture.statementExecuted(sql);
+            }
+            return result;
+        });
+    }
+
+    private interface Handler<T> {
+        Object handle(T target, Method method, Object[] args) throws Throwable;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, T target, Handler<T> handler) {
+        InvocationHandler invocationHandler = (proxy, method, args) -> {
+            if(method.getName().equals("unwrap") && args != null && args[0] == type)
+                return target;
+            return handler.handle(target, method, args);
+        };
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, invocationHandler);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package org.sindaryn.testifi.instrumentation;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Throughput, errors by exception type and deadlocks observed while several workers
+ * concurrently invoke resolvers. Thread safe.
+ */
+public class StressReport {
+
+    //sql states of serialization failures and deadlocks (ansi, postgres)
+    private static final String[] DEADLOCK_SQL_STATES = {"40001", "40P01"};
+
+    private final Map<String, LongAdder> operations = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private final LongAdder databaseDeadlocks = new LongAdder();
+    private volatile long elapsedNanos;
+    private volatile int jvmDeadlockedThreads;
+
+    public void success(String operation) {
+        operations.computeIfAbsent(operation, key -> new LongAdder()).increment();
+    }
+
+    public void failure(String operation, Throwable error) {
+        success(operation);
+        errors.computeIfAbsent(operation + ": " + rootCause(error).getClass().getName(), key -> new LongAdder()).increment();
+        if(isDeadlock(error)) databaseDeadlocks.increment();
+    }
+
+    //called once the workers are done
+    public void finish(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+        long[] deadlocked = ManagementFactory.getThreadMXBean().findDeadlockedThreads();
+        this.jvmDeadlockedThreads = deadlocked == null ? 0 : deadlocked.length;
+    }
+
+    public long getOperations() {
+        return operations.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+    public long getErrors() {
+        return errors.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+    //errors other than the given (expected) exception types, i.e. optimistic locking failures
+    public long getErrorsOtherThan(String... expectedTypes) {
+        long unexpected = 0;
+        outer:
+        for(Map.Entry<String, LongAdder> error : errors.entrySet()){
+            for(String expected : expectedTypes)
+                if(error.getKey().endsWith("." + expected)) continue outer;
+            unexpected += error.getValue().sum();
+        }
+        return unexpected;
+    }
+    public long getDeadlocks() {
+        return databaseDeadlocks.sum() + jvmDeadlockedThreads;
+    }
+    public double throughput() {
+        return elapsedNanos == 0 ? 0 : getOperations() / (elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    public void writeTo(File file) {
+        try (PrintWriter writer = new PrintWriter(file, StandardCharsets.UTF_8.name())) {
+            writer.println(this);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static boolean isDeadlock(Throwable error) {
+        for(Throwable cause = error; cause != null; cause = cause.getCause()){
+            if(cause instanceof SQLException){
+                String sqlState = ((SQLException) cause).getSQLState();
+                for(String deadlockState : DEADLOCK_SQL_STATES)
+                    if(deadlockState.equals(sqlState)) return true;
+            }
+            if(cause.getMessage() != null && cause.getMessage().toLowerCase().contains("deadlock")) return true;
+            if(cause.getCause() == cause) break;
+        }
+        return false;
+    }
+
+    private static Throwable rootCause(Throwable error) {
+        Throwable root = error;
+        while (root.getCause() != null && root.getCause() != root) root = root.getCause();
+        return root;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder()
+                .append(String.format("%d operations in %d ms (%.1f ops/s), %d errors, %d deadlocks",
+                        getOperations(), TimeUnit.NANOSECONDS.toMillis(elapsedNanos), throughput(),
+                        getErrors(), getDeadlocks()));
+        new TreeMap<>(operations).forEach((operation, count) ->
+                report.append("\n\t").append(operation).append(": ").append(count.sum()));
+        new TreeMap<>(errors).forEach((error, count) ->
+                report.append("\n\t").append(count.sum()).append(" x ").append(error));
+        if(jvmDeadlockedThreads > 0)
+            report.append("\n\t").append(jvmDeadlockedThreads).append(" deadlocked jvm threads");
+        return report.toString();
+    }
+}
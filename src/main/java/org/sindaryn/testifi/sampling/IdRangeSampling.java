@@ -0,0 +1,74 @@
+package org.sindaryn.testifi.sampling;
+
+import lombok.var;
+import org.sindaryn.datafi.service.BaseDataManager;
+import org.sindaryn.testifi.ClassMetadata;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+import java.lang.reflect.Field;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Probes random ids between the lowest and highest persisted id using {@code findById}.
+ * Only applicable to entities with integral ids - for anything else, or when the id
+ * space is too sparse to yield enough hits, the remainder is filled in by
+ * {@link OffsetPageSampling}.
+ */
+public class IdRangeSampling implements SamplingStrategy {
+
+    private static final int PROBES_PER_INSTANCE = 4;
+    private final SamplingStrategy fallback = new OffsetPageSampling();
+
+    @Override
+    public <T> List<T> sample(Class<?> clazz, BaseDataManager<T> dataManager, int amount) {
+        Field idField = integralIdField(clazz);
+        if(idField == null) return fallback.sample(clazz, dataManager, amount);
+        Long lowest = boundaryId(dataManager, idField, Sort.Direction.ASC);
+        Long highest = boundaryId(dataManager, idField, Sort.Direction.DESC);
+        if(lowest == null || highest == null) return new ArrayList<>();
+
+        Map<Long, T> sampled = new LinkedHashMap<>();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int probe = 0; probe < amount * PROBES_PER_INSTANCE && sampled.size() < amount; probe++) {
+            long candidate = random.nextLong(lowest, highest + 1);
+            if(sampled.containsKey(candidate)) continue;
+            dataManager
+                    .findById(toIdType(candidate, idField.getType()))
+                    .ifPresent(instance -> sampled.put(candidate, instance));
+        }
+        List<T> result = new ArrayList<>(sampled.values());
+        if(result.size() < amount){
+            Set<Object> sampledIds = new HashSet<>(dataManager.idList(result));
+            for(T instance : fallback.sample(clazz, dataManager, amount)){
+                if(result.size() >= amount) break;
+                if(!sampledIds.contains(dataManager.idList(Collections.singletonList(instance)).get(0)))
+                    result.add(instance);
+            }
+        }
+        return result;
+    }
+
+    private <T> Long boundaryId(BaseDataManager<T> dataManager, Field idField, Sort.Direction direction) {
+        var page = dataManager.findAll(PageRequest.of(0, 1, Sort.by(direction, idField.getName()))).getContent();
+        if(page.isEmpty()) return null;
+        return ((Number) dataManager.idList(page).get(0)).longValue();
+    }
+
+    private Field integralIdField(Class<?> clazz) {
+        Field idField = ClassMetadata.of(clazz).idField();
+        if(idField == null) return null;
+        Class<?> type = idField.getType();
+        boolean integral = type.equals(Long.class) || type.equals(long.class) ||
+                           type.equals(Integer.class) || type.equals(int.class) ||
+                           type.equals(Short.class) || type.equals(short.class);
+        return integral ? idField : null;
+    }
+
+    private Object toIdType(long id, Class<?> idType) {
+        if(idType.equals(Integer.class) || idType.equals(int.class)) return (int) id;
+        if(idType.equals(Short.class) || idType.equals(short.class)) return (short) id;
+        return id;
+    }
+}
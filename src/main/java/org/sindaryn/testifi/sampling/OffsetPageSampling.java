@@ -0,0 +1,42 @@
+package org.sindaryn.testifi.sampling;
+
+import org.sindaryn.datafi.service.BaseDataManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Draws {@code amount} distinct random row offsets in {@code [0, count)} and
+ * fetches each one as a single row page, ordered by id - one round trip per sampled row,
+ * regardless of table size. Rows inserted or deleted concurrently may still shift an offset
+ * onto an already sampled row, which is then skipped rather than returned twice.
+ */
+public class OffsetPageSampling implements SamplingStrategy {
+
+    @Override
+    public <T> List<T> sample(Class<?> clazz, BaseDataManager<T> dataManager, int amount) {
+        long count = dataManager.count();
+        Sort order = SamplingStrategy.stableOrder(clazz);
+        List<T> result = new ArrayList<>();
+        Set<Object> sampledIds = new HashSet<>();
+        for(long offset : distinctRandomOffsets(count, amount)){
+            List<T> page = dataManager.findAll(PageRequest.of(Math.toIntExact(offset), 1, order)).getContent();
+            if(!page.isEmpty() && sampledIds.add(dataManager.idList(page).get(0))) result.add(page.get(0));
+        }
+        return result;
+    }
+
+    static SortedSet<Long> distinctRandomOffsets(long count, int amount) {
+        SortedSet<Long> offsets = new TreeSet<>();
+        if(amount >= count){
+            for (long i = 0; i < count; i++) offsets.add(i);
+            return offsets;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (offsets.size() < amount)
+            offsets.add(random.nextLong(count));
+        return offsets;
+    }
+}
@@ -0,0 +1,42 @@
+package org.sindaryn.testifi.sampling;
+
+import lombok.RequiredArgsConstructor;
+import org.sindaryn.datafi.service.BaseDataManager;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Classic reservoir sampling ("algorithm R") over the table, streamed page by page.
+ * Reads every row once but never holds more than one page plus the reservoir in memory.
+ * Pages are ordered by id, so that no row is read twice or skipped - which would bias the sample.
+ */
+@RequiredArgsConstructor
+public class ReservoirSampling implements SamplingStrategy {
+
+    private final int pageSize;
+
+    @Override
+    public <T> List<T> sample(Class<?> clazz, BaseDataManager<T> dataManager, int amount) {
+        List<T> reservoir = new ArrayList<>(amount);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long seen = 0;
+        Page<T> page = dataManager.findAll(PageRequest.of(0, pageSize, SamplingStrategy.stableOrder(clazz)));
+        while (true){
+            for(T instance : page.getContent()){
+                if(reservoir.size() < amount) reservoir.add(instance);
+                else {
+                    long slot = random.nextLong(seen + 1);
+                    if(slot < amount) reservoir.set((int) slot, instance);
+                }
+                seen++;
+            }
+            if(!page.hasNext()) break;
+            page = dataManager.findAll(page.nextPageable());
+        }
+        return reservoir;
+    }
+}
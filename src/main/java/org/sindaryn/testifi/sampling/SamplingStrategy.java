@@ -0,0 +1,23 @@
+package org.sindaryn.testifi.sampling;
+
+import org.sindaryn.datafi.service.BaseDataManager;
+import org.sindaryn.testifi.ClassMetadata;
+import org.springframework.data.domain.Sort;
+
+import java.lang.reflect.Field;
+import java.util.List;
+
+/**
+ * Picks a random subset of persisted entities without loading the entire table.
+ * Implementations must never return more than {@code amount} instances, and should
+ * return exactly {@code amount} instances whenever the table holds that many rows.
+ */
+public interface SamplingStrategy {
+    <T> List<T> sample(Class<?> clazz, BaseDataManager<T> dataManager, int amount);
+
+    //pages without an order by aren't guaranteed to be stable, and could repeat or skip rows
+    static Sort stableOrder(Class<?> clazz) {
+        Field idField = ClassMetadata.of(clazz).idField();
+        return idField != null ? Sort.by(idField.getName()) : Sort.unsorted();
+    }
+}
@@ -0,0 +1,60 @@
+package org.sindaryn.testifi.service;
+
+import org.sindaryn.apifi.service.ApiLogic;
+import org.sindaryn.apifi.service.ApiMetaOperations;
+import org.sindaryn.datafi.reflection.ReflectionCache;
+import org.sindaryn.datafi.service.BaseDataManager;
+import org.sindaryn.mockeri.generator.EntityMocker;
+
+import java.util.List;
+
+import static org.sindaryn.testifi.StaticUtils.*;
+
+/**
+ * Runtime helpers for the generated {@code <Entity>GraphQLServiceBenchmark} classes.
+ */
+@SuppressWarnings("unchecked")
+public interface BenchmarkSupport {
+
+    //tops the table up to testifi.benchmark.rows rows, so that every resolver is benchmarked against a realistic dataset
+    static <T> void seed(Class<?> clazz, BaseDataManager<T> dataManager, EntityMocker entityMocker){
+        long missing = intSetting("testifi.benchmark.rows", 1000) - dataManager.count();
+        if(missing > 0) populate(clazz, dataManager, entityMocker, Math.toIntExact(missing));
+    }
+
+    static <T> Object sampleId(Class<?> clazz, BaseDataManager<T> dataManager){
+        return entityId(randomInstance(clazz, dataManager));
+    }
+
+    static <T> List<?> sampleIds(Class<?> clazz, BaseDataManager<T> dataManager){
+        return dataManager.idList(randomSample(clazz, dataManager, pageSize()));
+    }
+
+    static <T> Object sampleValue(Class<?> clazz, BaseDataManager<T> dataManager,
+                                  String fieldName, ReflectionCache reflectionCache){
+        return reflectionCache
+                .getEntitiesCache()
+                .get(clazz.getSimpleName())
+                .invokeGetter(randomInstance(clazz, dataManager), fieldName);
+    }
+
+    static <T> List<Object> sampleValues(Class<?> clazz, BaseDataManager<T> dataManager,
+                                         String fieldName, ReflectionCache reflectionCache){
+        return fieldValues(fieldName, randomSample(clazz, dataManager, pageSize()),
+                reflectionCache.getEntitiesCache().get(clazz.getSimpleName()));
+    }
+
+    //a substring of the value of the fuzzy searchable field of a random instance
+    static <T> String fuzzySearchTerm(Class<?> clazz, BaseDataManager<T> dataManager, ReflectionCache reflectionCache){
+        String fieldName = resolveFieldToFuzzySearchBy(clazz, reflectionCache).getName();
+        Object value = sampleValue(clazz, dataManager, fieldName, reflectionCache);
+        String term = value != null ? value.toString() : "";
+        return term.length() > 3 ? term.substring(1, term.length() - 1) : term;
+    }
+
+    //deletes what an add / addCollection invocation committed, so that the table stays at its seeded size
+    //and the read benchmarks measured afterwards aren't skewed by a growing table
+    static <T, E extends ApiMetaOperations<T>> void removeAdded(BaseDataManager<T> dataManager, List<T> added, E metaOps){
+        if(added != null && !added.isEmpty()) ApiLogic.deleteCollection(dataManager, added, metaOps);
+    }
+}
@@ -0,0 +1,35 @@
+package org.sindaryn.testifi.service;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * A single test of descriptor mode, named after the test method class mode would have generated for it.
+ */
+@RequiredArgsConstructor
+public class DescriptorTestCase {
+    @Getter
+    @NonNull
+    private final String name;
+    @Getter
+    @NonNull
+    private final Class<?> entity;
+    @NonNull
+    private final Body body;
+
+    public interface Body {
+        void run(ApplicationContext applicationContext) throws Exception;
+    }
+
+    public void run(ApplicationContext applicationContext) throws Exception {
+        body.run(applicationContext);
+    }
+
+    //the display name of the parameterized test
+    @Override
+    public String toString() {
+        return name;
+    }
+}
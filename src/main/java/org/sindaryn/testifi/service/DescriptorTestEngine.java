@@ -0,0 +1,244 @@
+package org.sindaryn.testifi.service;
+
+import org.sindaryn.apifi.service.ApiMetaOperations;
+import org.sindaryn.apifi.service.EmbeddedCollectionMetaOperations;
+import org.sindaryn.datafi.reflection.ReflectionCache;
+import org.sindaryn.datafi.service.ArchivableDataManager;
+import org.sindaryn.datafi.service.BaseDataManager;
+import org.sindaryn.mockeri.generator.EntityMocker;
+import org.sindaryn.testifi.annotations.PerformanceBudget;
+import org.sindaryn.testifi.instrumentation.PerformanceBaseline;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.ResolvableType;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.sindaryn.datafi.StaticUtils.toPascalCase;
+import static org.sindaryn.datafi.StaticUtils.toPlural;
+
+/**
+ * Runtime half of descriptor mode: expands the entity descriptors written by the annotation processor
+ * into {@link DescriptorTestCase test cases}, which invoke the same {@link TestLogic} a generated test class would.
+ * Beans are looked up by their generic type, just as the fields of a generated test class are autowired.
+ */
+@SuppressWarnings({"unchecked", "rawtypes"})
+public abstract class DescriptorTestEngine {
+
+    public static final String DESCRIPTORS = "META-INF/testifi/descriptors/";
+    public static final String INDEX = "META-INF/testifi/descriptors.index";
+
+    private static List<DescriptorTestCase> testCases;
+
+    public static synchronized List<DescriptorTestCase> testCases() {
+        if(testCases == null){
+            List<DescriptorTestCase> cases = new ArrayList<>();
+            for(Properties descriptor : descriptors())
+                addTestCases(descriptor, cases);
+            testCases = Collections.unmodifiableList(cases);
+        }
+        return testCases;
+    }
+
+    //junit 4's Parameterized runner expects an array of arguments per test
+    public static Collection<Object[]> parameters() {
+        List<Object[]> parameters = new ArrayList<>();
+        testCases().forEach(testCase -> parameters.add(new Object[]{testCase}));
+        return parameters;
+    }
+
+    //see PerformanceBaseline - checked for every described entity once all test cases are done
+    public static void checkPerformanceBaselines() {
+        Set<Class<?>> entities = new LinkedHashSet<>();
+        testCases().forEach(testCase -> entities.add(testCase.getEntity()));
+        entities.forEach(PerformanceBaseline::check);
+    }
+
+    private static void addTestCases(Properties descriptor, List<DescriptorTestCase> cases) {
+        Class<?> clazz = load(descriptor.getProperty("entity"));
+        String name = clazz.getSimpleName();
+        String pascalName = toPascalCase(name);
+        String pluralPascalName = toPlural(pascalName);
+        if(flag(descriptor, "exposed")){
+            add(cases, clazz, "all" + pluralPascalName + "Test", ctx ->
+                    TestLogic.getAllTest(clazz, dataManager(ctx, clazz), reflectionCache(ctx), metaOps(ctx, clazz)));
+            add(cases, clazz, "get" + pascalName + "ByIdTest", ctx ->
+                    TestLogic.getByIdTest(clazz, dataManager(ctx, clazz), metaOps(ctx, clazz), reflectionCache(ctx)));
+            add(cases, clazz, "get" + pluralPascalName + "ByIdTest", ctx ->
+                    TestLogic.getCollectionByIdTest(clazz, dataManager(ctx, clazz)));
+            if(flag(descriptor, "fuzzySearchable"))
+                add(cases, clazz, pluralPascalName + "FuzzySearchTest", ctx ->
+                        TestLogic.fuzzySearchTest(clazz, dataManager(ctx, clazz), reflectionCache(ctx),
+                                entityMocker(ctx), metaOps(ctx, clazz)));
+            if(!flag(descriptor, "readOnly")){
+                add(cases, clazz, "add" + pascalName + "Test", ctx ->
+                        TestLogic.addTest(clazz, dataManager(ctx, clazz), entityMocker(ctx), metaOps(ctx, clazz)));
+                add(cases, clazz, "update" + pascalName + "Test", ctx ->
+                        TestLogic.updateTest(clazz, dataManager(ctx, clazz), entityMocker(ctx),
+                                reflectionCache(ctx), metaOps(ctx, clazz)));
+                add(cases, clazz, "delete" + pascalName + "Test", ctx ->
+                        TestLogic.deleteTest(clazz, dataManager(ctx, clazz), reflectionCache(ctx),
+                                entityMocker(ctx), metaOps(ctx, clazz)));
+                add(cases, clazz, "add" + pluralPascalName + "Test", ctx ->
+                        TestLogic.addCollectionTest(clazz, dataManager(ctx, clazz), entityMocker(ctx), metaOps(ctx, clazz)));
+                add(cases, clazz, "update" + pluralPascalName + "Test", ctx ->
+                        TestLogic.updateCollectionTest(clazz, dataManager(ctx, clazz), entityMocker(ctx), metaOps(ctx, clazz)));
+                add(cases, clazz, "delete" + pluralPascalName + "Test", ctx ->
+                        TestLogic.deleteCollectionTest(clazz, dataManager(ctx, clazz), entityMocker(ctx), metaOps(ctx, clazz)));
+                if(flag(descriptor, "archivable")){
+                    add(cases, clazz, "archive" + pascalName + "Test", ctx ->
+                            TestLogic.archiveTest(clazz, archivableDataManager(ctx, clazz), reflectionCache(ctx),
+                                    entityMocker(ctx), (ApiMetaOperations) metaOps(ctx, clazz)));
+                    add(cases, clazz, "deArchive" + pascalName + "Test", ctx ->
+                            TestLogic.deArchiveTest(clazz, archivableDataManager(ctx, clazz), reflectionCache(ctx),
+                                    entityMocker(ctx), (ApiMetaOperations) metaOps(ctx, clazz)));
+                    add(cases, clazz, "archive" + pluralPascalName + "Test", ctx ->
+                            TestLogic.archiveCollectionTest(clazz, archivableDataManager(ctx, clazz),
+                                    entityMocker(ctx), (ApiMetaOperations) metaOps(ctx, clazz)));
+                    add(cases, clazz, "deArchive" + pluralPascalName + "Test", ctx ->
+                            TestLogic.deArchiveCollectionTest(clazz, archivableDataManager(ctx, clazz),
+                                    entityMocker(ctx), (ApiMetaOperations) metaOps(ctx, clazz)));
+                }
+            }
+        }
+        for(String field : list(descriptor, "embedded"))
+            addEmbeddedFieldTestCases(descriptor, clazz, field, cases);
+        for(String field : list(descriptor, "getAllBy"))
+            add(cases, clazz, "getAll" + pluralPascalName + "By" + toPlural(toPascalCase(field)) + "Test", ctx ->
+                    TestLogic.getAllByTest(clazz, dataManager(ctx, clazz), metaOps(ctx, clazz), field, reflectionCache(ctx)));
+        for(String field : list(descriptor, "getBy"))
+            add(cases, clazz, "get" + pluralPascalName + "By" + toPascalCase(field) + "Test", ctx ->
+                    TestLogic.getByTest(clazz, dataManager(ctx, clazz), metaOps(ctx, clazz), field, reflectionCache(ctx)));
+        for(String field : list(descriptor, "getByUnique"))
+            add(cases, clazz, "get" + pascalName + "ByUnique" + toPascalCase(field) + "Test", ctx ->
+                    TestLogic.getByUniqueTest(clazz, dataManager(ctx, clazz), metaOps(ctx, clazz), field, reflectionCache(ctx)));
+        for(String resolver : list(descriptor, "resolvers")){
+            List<String> args = list(descriptor, "resolver." + resolver + ".args");
+            add(cases, clazz, resolver + "Test", ctx ->
+                    TestLogic.selectByTest(clazz, dataManager(ctx, clazz), metaOps(ctx, clazz), resolver, args,
+                            entityMocker(ctx), reflectionCache(ctx)));
+        }
+        //budgets are read off the entity itself, as performanceBudgetTest does anyway - having been validated at compile time
+        for(PerformanceBudget budget : clazz.getAnnotationsByType(PerformanceBudget.class)){
+            String fieldSuffix = budget.field().isEmpty() ? "" : toPascalCase(budget.field());
+            add(cases, clazz, budget.resolver() + fieldSuffix + "PerformanceBudgetTest", ctx ->
+                    TestLogic.performanceBudgetTest(clazz, dataManager(ctx, clazz), reflectionCache(ctx),
+                            entityMocker(ctx), metaOps(ctx, clazz), budget.resolver(), budget.field()));
+        }
+    }
+
+    private static void addEmbeddedFieldTestCases(Properties descriptor, Class<?> owner, String field,
+                                                  List<DescriptorTestCase> cases) {
+        Class<?> embedded = load(descriptor.getProperty("embedded." + field + ".type"));
+        String fieldName = toPascalCase(field);
+        String ownerName = toPascalCase(owner.getSimpleName());
+        if(!flag(descriptor, "embedded." + field + ".collection")){
+            add(cases, owner, "get" + fieldName + "From" + ownerName + "Test", ctx ->
+                    TestLogic.getAsEmbeddedEntityTest(embedded, owner, dataManager(ctx, embedded),
+                            dataManager(ctx, owner), field, entityMocker(ctx), reflectionCache(ctx)));
+            return;
+        }
+        add(cases, owner, "get" + fieldName + "From" + ownerName + "Test", ctx ->
+                TestLogic.getAsEmbeddedEntityCollectionTest(embedded, owner, dataManager(ctx, embedded),
+                        dataManager(ctx, owner), field, entityMocker(ctx), reflectionCache(ctx)));
+        if(flag(descriptor, "embedded." + field + ".exposeDirectly"))
+            add(cases, owner, "attachExisting" + fieldName + "To" + ownerName + "Test", ctx ->
+                    TestLogic.attachExistingToEmbeddedCollectionTest(embedded, owner, dataManager(ctx, embedded),
+                            dataManager(ctx, owner), field, entityMocker(ctx), reflectionCache(ctx),
+                            embeddedCollectionMetaOps(ctx, embedded, owner)));
+        else
+            add(cases, owner, "addNew" + fieldName + "To" + ownerName + "Test", ctx ->
+                    TestLogic.addNewToEmbeddedCollectionTest(embedded, owner, dataManager(ctx, embedded),
+                            dataManager(ctx, owner), field, entityMocker(ctx), reflectionCache(ctx),
+                            embeddedCollectionMetaOps(ctx, embedded, owner)));
+        add(cases, owner, "update" + fieldName + "In" + ownerName + "Test", ctx ->
+                TestLogic.updateEmbeddedCollectionTest(embedded, owner, dataManager(ctx, embedded),
+                        dataManager(ctx, owner), field, entityMocker(ctx), reflectionCache(ctx),
+                        embeddedCollectionMetaOps(ctx, embedded, owner)));
+        add(cases, owner, "remove" + fieldName + "From" + ownerName + "Test", ctx ->
+                TestLogic.removeFromEmbeddedCollectionTest(embedded, owner, dataManager(ctx, embedded),
+                        dataManager(ctx, owner), field, entityMocker(ctx), reflectionCache(ctx),
+                        embeddedCollectionMetaOps(ctx, embedded, owner)));
+    }
+
+    private static void add(List<DescriptorTestCase> cases, Class<?> entity, String testName, DescriptorTestCase.Body body) {
+        cases.add(new DescriptorTestCase(entity.getSimpleName() + "." + testName, entity, body));
+    }
+
+    //bean lookups
+    private static BaseDataManager dataManager(ApplicationContext ctx, Class<?> clazz) {
+        return (BaseDataManager) bean(ctx, ResolvableType.forClassWithGenerics(BaseDataManager.class, clazz));
+    }
+
+    private static ArchivableDataManager archivableDataManager(ApplicationContext ctx, Class<?> clazz) {
+        return (ArchivableDataManager) bean(ctx, ResolvableType.forClassWithGenerics(ArchivableDataManager.class, clazz));
+    }
+
+    private static ApiMetaOperations metaOps(ApplicationContext ctx, Class<?> clazz) {
+        return (ApiMetaOperations) bean(ctx, ResolvableType.forClassWithGenerics(ApiMetaOperations.class, clazz));
+    }
+
+    private static EmbeddedCollectionMetaOperations embeddedCollectionMetaOps(ApplicationContext ctx, Class<?> embedded, Class<?> owner) {
+        return (EmbeddedCollectionMetaOperations) bean(ctx,
+                ResolvableType.forClassWithGenerics(EmbeddedCollectionMetaOperations.class, embedded, owner));
+    }
+
+    private static ReflectionCache reflectionCache(ApplicationContext ctx) {
+        return ctx.getBean(ReflectionCache.class);
+    }
+
+    private static EntityMocker entityMocker(ApplicationContext ctx) {
+        return ctx.getBean(EntityMocker.class);
+    }
+
+    private static Object bean(ApplicationContext ctx, ResolvableType type) {
+        return ctx.getBeanProvider(type).getObject();
+    }
+
+    //descriptor loading
+    private static List<Properties> descriptors() {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        Set<String> entities = new TreeSet<>();
+        try {
+            //each module with entities of its own contributes an index
+            for(URL index : Collections.list(classLoader.getResources(INDEX)))
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(index.openStream(), StandardCharsets.UTF_8))) {
+                    reader.lines().map(String::trim).filter(line -> !line.isEmpty()).forEach(entities::add);
+                }
+            List<Properties> descriptors = new ArrayList<>();
+            for(String entity : entities){
+                try (InputStream in = classLoader.getResourceAsStream(DESCRIPTORS + entity + ".properties")) {
+                    if(in == null) throw new IllegalStateException("no test descriptor found for " + entity);
+                    Properties descriptor = new Properties();
+                    descriptor.load(in);
+                    descriptors.add(descriptor);
+                }
+            }
+            return descriptors;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static Class<?> load(String className) {
+        try {
+            return Class.forName(className, true, Thread.currentThread().getContextClassLoader());
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("described entity " + className + " is not on the class path", e);
+        }
+    }
+
+    private static boolean flag(Properties descriptor, String key) {
+        return Boolean.parseBoolean(descriptor.getProperty(key, "false"));
+    }
+
+    private static List<String> list(Properties descriptor, String key) {
+        String value = descriptor.getProperty(key, "");
+        return value.isEmpty() ? Collections.emptyList() : Arrays.asList(value.split(","));
+    }
+}
@@ -0,0 +1,19 @@
+package org.sindaryn.testifi.service;
+
+import java.util.Collection;
+
+/**
+ * Typed, reflection free access to the fields of an entity by field name.
+ * An implementation named {@code <Entity>TestifiAccessor} is generated alongside
+ * each entity by the annotation processor, and resolved at runtime via {@link EntityAccessors}.
+ */
+public interface EntityAccessor<T> {
+    //returned by get(...) for fields which have no accessible getter
+    Object UNKNOWN_FIELD = new Object();
+
+    Object get(T entity, String fieldName);
+    //returns false if the field has no accessible setter
+    boolean set(T entity, String fieldName, Object value);
+    //returns null if the field is not a collection
+    Class<? extends Collection> collectionType(String fieldName);
+}
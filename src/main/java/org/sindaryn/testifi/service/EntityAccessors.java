@@ -0,0 +1,38 @@
+package org.sindaryn.testifi.service;
+
+import org.sindaryn.testifi.MetadataCache;
+
+import javax.persistence.Entity;
+
+/**
+ * Resolves the generated {@link EntityAccessor} of an entity class, if there is one.
+ * Hibernate proxies resolve to the accessor of the entity they proxy.
+ */
+@SuppressWarnings("unchecked")
+public abstract class EntityAccessors {
+
+    public static final String ACCESSOR_SUFFIX = "TestifiAccessor";
+
+    private static final MetadataCache<EntityAccessor<Object>> accessors =
+            new MetadataCache<>("entity accessors", EntityAccessors::loadAccessor);
+
+    private static EntityAccessor<Object> loadAccessor(Class<?> clazz) {
+        Class<?> entityType = clazz;
+        while (entityType != null && !entityType.isAnnotationPresent(Entity.class))
+            entityType = entityType.getSuperclass();
+        if(entityType == null) return null;
+        try {
+            Class<?> accessorType =
+                    Class.forName(entityType.getName() + ACCESSOR_SUFFIX, true, entityType.getClassLoader());
+            return (EntityAccessor<Object>) accessorType.newInstance();
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static EntityAccessor<Object> of(Class<?> clazz) {
+        return accessors.get(clazz);
+    }
+}
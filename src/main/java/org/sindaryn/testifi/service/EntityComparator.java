@@ -0,0 +1,74 @@
+package org.sindaryn.testifi.service;
+
+import org.sindaryn.datafi.annotations.NonApiUpdatable;
+import org.sindaryn.datafi.annotations.NonApiUpdatables;
+import org.sindaryn.testifi.ClassMetadata;
+import org.sindaryn.testifi.MetadataCache;
+
+import javax.persistence.Column;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Field by field comparison of two instances of the same class, as performed by the {@link EquivalencyMatcher}.
+ * The updatable fields of a class are resolved once, and each is bound to a {@link MethodHandle} getter,
+ * so comparing two instances boils down to a single pass over a precomputed array of getters.
+ */
+class EntityComparator {
+
+    private static final MetadataCache<EntityComparator> comparators =
+            new MetadataCache<>("entity comparators", EntityComparator::new);
+    private static final MethodType objectGetterType = MethodType.methodType(Object.class, Object.class);
+
+    private final MethodHandle[] getters;
+
+    private EntityComparator(Class<?> clazz) {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        List<MethodHandle> updatableFieldGetters = new ArrayList<>();
+        for (Field field : ClassMetadata.of(clazz).fields()) {
+            if(!isUpdatableField(field)) continue;
+            try {
+                updatableFieldGetters.add(lookup.unreflectGetter(field).asType(objectGetterType));
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        this.getters = updatableFieldGetters.toArray(new MethodHandle[0]);
+    }
+
+    static EntityComparator of(Class<?> clazz) {
+        return comparators.get(clazz);
+    }
+
+    boolean matches(Object expected, Object actual) {
+        try {
+            for (MethodHandle getter : getters) {
+                Object expectedValue = (Object) getter.invokeExact(expected);
+                Object actualValue = (Object) getter.invokeExact(actual);
+                if(expectedValue == null && actualValue == null) continue;
+                if(expectedValue == null ^ actualValue == null) return false;
+                if(!expectedValue.equals(actualValue))
+                    return false;
+            }
+        } catch (Throwable throwable) {
+            throw new RuntimeException(throwable);
+        }
+        return true;
+    }
+
+    private static boolean isUpdatableField(Field field) {
+        Object parent = field.getDeclaringClass();
+        return !(field.isAnnotationPresent(Column.class) && !field.getAnnotation(Column.class).updatable()) &&
+                !field.isAnnotationPresent(NonApiUpdatable.class) &&
+                !(
+                        parent.getClass().isAnnotationPresent(NonApiUpdatables.class) &&
+                                Arrays.asList(parent.getClass().getAnnotation(NonApiUpdatables.class).value())
+                                        .contains(field.getName())
+                );
+    }
+}
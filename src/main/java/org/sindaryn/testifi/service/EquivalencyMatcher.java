@@ -6,14 +6,11 @@ import lombok.RequiredArgsConstructor;
 import org.hamcrest.Description;
 import org.hamcrest.Matcher;
 import org.hamcrest.TypeSafeMatcher;
-import org.sindaryn.datafi.annotations.NonApiUpdatable;
-import org.sindaryn.datafi.annotations.NonApiUpdatables;
 
-import javax.persistence.Column;
-import java.lang.reflect.Field;
 import java.util.*;
 
-import static org.sindaryn.datafi.reflection.ReflectionCache.getClassFields;
+import static org.sindaryn.testifi.StaticUtils.entityId;
+import static org.sindaryn.testifi.StaticUtils.isEntity;
 
 
 @SuppressWarnings("unchecked")
@@ -31,10 +28,14 @@ public class EquivalencyMatcher extends TypeSafeMatcher<Object> {
             if(expected == null ^ actual == null)
                 return false;
             if(Iterable.class.isAssignableFrom(expected.getClass())){
-                List<Object> expectedAsList = toSortedList(expected);
-                List<Object> actualAsList = toSortedList(actual);
+                List<Object> expectedAsList = toList(expected);
+                List<Object> actualAsList = toList(actual);
                 if(expectedAsList.size() != actualAsList.size())
                     return false;
+                if(allEntitiesWithIds(expectedAsList) && allEntitiesWithIds(actualAsList))
+                    return matchById(expectedAsList, actualAsList);
+                expectedAsList = toSortedList(expectedAsList);
+                actualAsList = toSortedList(actualAsList);
                 for (int i = 0; i < expectedAsList.size(); i++) {
                     boolean embeddedCollectionsAreEquivalent =
                             new EquivalencyMatcher(actualAsList.get(i)).matchesSafely(expectedAsList.get(i));
@@ -45,15 +46,7 @@ public class EquivalencyMatcher extends TypeSafeMatcher<Object> {
                 if(!expected.equals(actual))
                     return false;
             } else{
-                for (Field field : getClassFields(expected.getClass())) {
-                    field.setAccessible(true);
-                    if(isUpdatableField(field)){
-                        if(field.get(expected) == null && field.get(actual) == null) return true;
-                        if(field.get(expected) == null ^ field.get(actual) == null) return false;
-                        if(!field.get(expected).equals(field.get(actual)))
-                            return false;
-                    }
-                }
+                return EntityComparator.of(expected.getClass()).matches(expected, actual);
             }
         }catch (Exception e){
             throw new RuntimeException(e);
@@ -71,10 +64,62 @@ public class EquivalencyMatcher extends TypeSafeMatcher<Object> {
         }else return o.toString();
     }*/
 
-    private List<Object> toSortedList(Object collection) {
-        List asList = new ArrayList((Collection) collection);
-        asList.sort(Comparator.comparing(Object::toString));
-        return asList;
+    private List<Object> toList(Object collection) {
+        return new ArrayList<Object>((Collection) collection);
+    }
+
+    private boolean allEntitiesWithIds(List<Object> items) {
+        for(Object item : items)
+            if(item == null || !isEntity(item.getClass()) || entityId(item) == null)
+                return false;
+        return true;
+    }
+
+    //pairs up entities by id in O(n), rather than sorting both sides and comparing them pairwise.
+    //each actual item is paired up at most once, so that duplicate expected ids can't match a single actual item
+    private boolean matchById(List<Object> expectedItems, List<Object> actualItems) {
+        Map<Object, Object> actualById = new HashMap<>(actualItems.size() * 2);
+        for(Object item : actualItems)
+            actualById.put(entityId(item), item);
+        if(actualById.size() != actualItems.size())
+            return false;
+        for(Object expectedItem : expectedItems){
+            Object actualItem = actualById.remove(entityId(expectedItem));
+            if(actualItem == null || !new EquivalencyMatcher(actualItem).matchesSafely(expectedItem))
+                return false;
+        }
+        return true;
+    }
+
+    //sort key is computed once per item - entities are keyed by id,
+    //so their (potentially lazy loading & recursive) toString is never invoked
+    private List<Object> toSortedList(List<Object> items) {
+        List<Map.Entry<String, Object>> keyed = new ArrayList<>(items.size());
+        for(Object item : items)
+            keyed.add(new AbstractMap.SimpleImmutableEntry<>(sortKey(item), item));
+        keyed.sort(Map.Entry.comparingByKey());
+        List<Object> sorted = new ArrayList<>(keyed.size());
+        for(Map.Entry<String, Object> entry : keyed)
+            sorted.add(entry.getValue());
+        return sorted;
+    }
+
+    private String sortKey(Object item) {
+        if(item == null)
+            return "";
+        if(item instanceof Iterable){
+            List<String> keys = new ArrayList<>();
+            for(Object embedded : (Iterable) item)
+                keys.add(sortKey(embedded));
+            Collections.sort(keys);
+            return keys.toString();
+        }
+        if(isEntity(item.getClass())){
+            Object id = entityId(item);
+            if(id != null)
+                return item.getClass().getSimpleName() + "#" + id;
+        }
+        return item.toString();
     }
 
     /*private Map<Integer, Object> toMap(Object collection){
@@ -84,17 +129,6 @@ public class EquivalencyMatcher extends TypeSafeMatcher<Object> {
                .collect(Collectors.toMap(Object::hashCode, obj -> obj));
     }*/
 
-    private boolean isUpdatableField(Field field) {
-        Object parent = field.getDeclaringClass();
-        return !(field.isAnnotationPresent(Column.class) && !field.getAnnotation(Column.class).updatable()) &&
-                !field.isAnnotationPresent(NonApiUpdatable.class) &&
-                !(
-                        parent.getClass().isAnnotationPresent(NonApiUpdatables.class) &&
-                                Arrays.asList(parent.getClass().getAnnotation(NonApiUpdatables.class).value())
-                                        .contains(field.getName())
-                );
-    }
-
     @Override
     public void describeTo(Description description) {}
     public static Matcher<Object> isEqualTo(Object actual) {return new EquivalencyMatcher(actual);}
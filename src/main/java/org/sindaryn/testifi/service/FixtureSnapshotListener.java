@@ -0,0 +1,26 @@
+package org.sindaryn.testifi.service;
+
+import org.sindaryn.datafi.reflection.ReflectionCache;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.context.TestContext;
+import org.springframework.test.context.support.AbstractTestExecutionListener;
+
+import javax.sql.DataSource;
+
+/**
+ * Binds {@link TestPersistence} to the test's application context, and captures or restores the
+ * {@link FixtureSnapshots fixture snapshot} before the first generated test class runs - outside of any
+ * test managed transaction.
+ */
+public class FixtureSnapshotListener extends AbstractTestExecutionListener {
+
+    @Override
+    public void beforeTestClass(TestContext testContext) {
+        ApplicationContext applicationContext = testContext.getApplicationContext();
+        TestPersistence.bind(applicationContext);
+        if(!FixtureSnapshots.isEnabled()) return;
+        FixtureSnapshots.ensureLoaded(
+                applicationContext.getBean(DataSource.class),
+                applicationContext.getBean(ReflectionCache.class));
+    }
+}
@@ -0,0 +1,98 @@
+package org.sindaryn.testifi.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.sindaryn.datafi.reflection.CachedEntityField;
+import org.sindaryn.datafi.reflection.CachedEntityType;
+import org.sindaryn.datafi.reflection.ReflectionCache;
+
+import javax.sql.DataSource;
+import java.io.File;
+import java.lang.reflect.Field;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.sindaryn.testifi.StaticUtils.setting;
+
+/**
+ * Dumps the mock data populated by Mockeri's {@code DatabasePopulator} into a compressed H2 script once,
+ * and restores it on subsequent runs instead of regenerating it. Snapshots are keyed by a hash of the
+ * entity model, so a change to any entity results in a fresh snapshot being captured.
+ * Only H2 databases are supported - for anything else this is a no-op.
+ */
+@Slf4j
+public abstract class FixtureSnapshots {
+
+    private static final Set<DataSource> handled = ConcurrentHashMap.newKeySet();
+
+    public static boolean isEnabled() {
+        return Boolean.parseBoolean(setting("testifi.snapshot", "false"));
+    }
+
+    public static void ensureLoaded(DataSource dataSource, ReflectionCache reflectionCache) {
+        if(!isEnabled() || !handled.add(dataSource)) return;
+        File snapshot = snapshotFile(reflectionCache);
+        boolean populatedByMockeri = Boolean.parseBoolean(setting("DUMMY_POPULATE", "false"));
+        try (Connection connection = dataSource.getConnection()) {
+            if(!"H2".equals(connection.getMetaData().getDatabaseProductName())){
+                log.warn("fixture snapshots are only supported for H2 databases, skipping");
+                return;
+            }
+            if(populatedByMockeri && !snapshot.exists()){
+                if(!snapshot.getParentFile().exists() && !snapshot.getParentFile().mkdirs())
+                    throw new RuntimeException("cannot create directory " + snapshot.getParentFile());
+                execute(connection, "SCRIPT DROP TO ? COMPRESSION GZIP", snapshot);
+                log.info("captured fixture snapshot " + snapshot);
+            }else if(!populatedByMockeri && snapshot.exists()){
+                execute(connection, "RUNSCRIPT FROM ? COMPRESSION GZIP", snapshot);
+                log.info("restored fixture snapshot " + snapshot);
+            }else if(!populatedByMockeri)
+                log.warn("no fixture snapshot found for the current entity model - " +
+                         "run once with DUMMY_POPULATE=true in order to capture one");
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void execute(Connection connection, String sql, File snapshot) throws Exception {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, snapshot.getAbsolutePath());
+            statement.execute();
+        }
+    }
+
+    private static File snapshotFile(ReflectionCache reflectionCache) {
+        String directory = setting("testifi.snapshot.dir", "target/testifi");
+        return new File(directory, "fixtures-" + entityModelHash(reflectionCache) + ".sql.gz");
+    }
+
+    //a structural hash of every entity's fields, their types and their annotations
+    static String entityModelHash(ReflectionCache reflectionCache) {
+        StringBuilder model = new StringBuilder();
+        Map<String, CachedEntityType> entities = new TreeMap<>(reflectionCache.getEntitiesCache());
+        for(Map.Entry<String, CachedEntityType> entity : entities.entrySet()){
+            model.append(entity.getKey()).append('{');
+            Map<String, CachedEntityField> fields = new TreeMap<>(entity.getValue().getFields());
+            for(CachedEntityField cachedField : fields.values()){
+                Field field = cachedField.getField();
+                List<String> annotations = new ArrayList<>();
+                Arrays.stream(field.getAnnotations()).forEach(annotation -> annotations.add(annotation.toString()));
+                Collections.sort(annotations);
+                model.append(field.getName()).append(':')
+                     .append(field.getGenericType().getTypeName())
+                     .append(annotations).append(';');
+            }
+            model.append('}');
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(model.toString().getBytes(StandardCharsets.UTF_8));
+            return String.format("%064x", new BigInteger(1, digest)).substring(0, 16);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
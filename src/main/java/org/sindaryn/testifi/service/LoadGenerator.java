@@ -0,0 +1,145 @@
+package org.sindaryn.testifi.service;
+
+import org.sindaryn.apifi.service.ApiMetaOperations;
+import org.sindaryn.datafi.service.BaseDataManager;
+import org.sindaryn.testifi.instrumentation.LatencyRecorder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.sindaryn.testifi.StaticUtils.workerExecutor;
+
+/**
+ * Runs an operation - typically a {@link TestLogic}-style call of an ApiLogic resolver - under load, either
+ * <ul>
+ *     <li>closed loop: a fixed number of workers, each invoking the operation again as soon as it returns, or</li>
+ *     <li>open loop: invocations start at a fixed rate, regardless of how long earlier ones take.</li>
+ * </ul>
+ * Open loop latencies are measured from when an invocation was scheduled to start rather than from when it actually
+ * started, so that a stalled system doesn't get to hide its backlog (coordinated omission). Workers are virtual
+ * threads on runtimes which have them.
+ */
+public class LoadGenerator {
+
+    @FunctionalInterface
+    public interface Operation {
+        void run() throws Exception;
+    }
+
+    @FunctionalInterface
+    public interface ResolverOperation<T, E extends ApiMetaOperations<T>> {
+        void run(BaseDataManager<T> dataManager, E metaOps) throws Exception;
+    }
+
+    public enum Mode { CLOSED_LOOP, OPEN_LOOP }
+
+    private final Mode mode;
+    private final int concurrency;
+    private final double ratePerSecond;
+    private final long durationNanos;
+
+    private LoadGenerator(Mode mode, int concurrency, double ratePerSecond, long duration, TimeUnit unit) {
+        if(concurrency <= 0) throw new IllegalArgumentException("concurrency must be positive");
+        if(mode == Mode.OPEN_LOOP && ratePerSecond <= 0) throw new IllegalArgumentException("rate must be positive");
+        this.mode = mode;
+        this.concurrency = concurrency;
+        this.ratePerSecond = ratePerSecond;
+        this.durationNanos = unit.toNanos(duration);
+    }
+
+    //workers invoke the operation back to back
+    public static LoadGenerator closedLoop(int workers, long duration, TimeUnit unit) {
+        return new LoadGenerator(Mode.CLOSED_LOOP, workers, 0, duration, unit);
+    }
+
+    //invocations start at the given rate, with at most maxInFlight of them running at any point
+    public static LoadGenerator openLoop(double ratePerSecond, int maxInFlight, long duration, TimeUnit unit) {
+        return new LoadGenerator(Mode.OPEN_LOOP, maxInFlight, ratePerSecond, duration, unit);
+    }
+
+    public <T, E extends ApiMetaOperations<T>> LoadReport run(BaseDataManager<T> dataManager, E metaOps,
+                                                              ResolverOperation<T, E> operation) throws InterruptedException {
+        return run(() -> operation.run(dataManager, metaOps));
+    }
+
+    public LoadReport run(Operation operation) throws InterruptedException {
+        LoadReport report = new LoadReport(mode, concurrency, ratePerSecond);
+        ExecutorService executor = workerExecutor(concurrency);
+        long start = System.nanoTime();
+        try {
+            if(mode == Mode.CLOSED_LOOP)
+                runClosedLoop(operation, executor, start, report);
+            else
+                runOpenLoop(operation, executor, start, report);
+        } finally {
+            executor.shutdown();
+            if(!executor.awaitTermination(durationNanos + TimeUnit.MINUTES.toNanos(1), TimeUnit.NANOSECONDS))
+                executor.shutdownNow();
+        }
+        report.finish(System.nanoTime() - start);
+        return report;
+    }
+
+    private void runClosedLoop(Operation operation, ExecutorService executor, long start, LoadReport report)
+            throws InterruptedException {
+        long deadline = start + durationNanos;
+        List<Future<LatencyRecorder>> workers = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++)
+            workers.add(executor.submit(() -> {
+                //one recorder per worker, merged once they're done
+                LatencyRecorder latencies = new LatencyRecorder();
+                while (System.nanoTime() < deadline){
+                    long invoked = System.nanoTime();
+                    invoke(operation, report);
+                    latencies.record(System.nanoTime() - invoked);
+                }
+                return latencies;
+            }));
+        for(Future<LatencyRecorder> worker : workers){
+            try {
+                report.record(worker.get());
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+    }
+
+    private void runOpenLoop(Operation operation, ExecutorService executor, long start, LoadReport report)
+            throws InterruptedException {
+        long intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond));
+        Semaphore inFlight = new Semaphore(concurrency);
+        LatencyRecorder latencies = new LatencyRecorder();
+        long invocations = durationNanos / intervalNanos;
+        for (long i = 0; i < invocations; i++) {
+            long scheduled = start + i * intervalNanos;
+            long delay;
+            while ((delay = scheduled - System.nanoTime()) > 0) LockSupport.parkNanos(delay);
+            //when saturated the schedule falls behind, which the latencies of the delayed invocations account for
+            inFlight.acquire();
+            executor.execute(() -> {
+                try {
+                    invoke(operation, report);
+                    long latency = System.nanoTime() - scheduled;
+                    synchronized (latencies) {
+                        latencies.record(latency);
+                    }
+                } finally {
+                    inFlight.release();
+                }
+            });
+        }
+        inFlight.acquire(concurrency);
+        report.record(latencies);
+    }
+
+    private static void invoke(Operation operation, LoadReport report) {
+        try {
+            operation.run();
+            report.success();
+        } catch (Throwable error) {
+            report.failure(error);
+        }
+    }
+}
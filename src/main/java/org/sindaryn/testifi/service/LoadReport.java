@@ -0,0 +1,69 @@
+package org.sindaryn.testifi.service;
+
+import org.sindaryn.testifi.instrumentation.LatencyRecorder;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The outcome of a {@link LoadGenerator} run.
+ */
+public class LoadReport {
+
+    private final LoadGenerator.Mode mode;
+    private final int concurrency;
+    private final double targetRatePerSecond;
+    private final LongAdder successes = new LongAdder();
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private final LatencyRecorder latencies = new LatencyRecorder();
+    private long elapsedNanos;
+
+    LoadReport(LoadGenerator.Mode mode, int concurrency, double targetRatePerSecond) {
+        this.mode = mode;
+        this.concurrency = concurrency;
+        this.targetRatePerSecond = targetRatePerSecond;
+    }
+
+    void success() {
+        successes.increment();
+    }
+    void failure(Throwable error) {
+        errors.computeIfAbsent(error.getClass().getName(), key -> new LongAdder()).increment();
+    }
+    synchronized void record(LatencyRecorder recorded) {
+        latencies.add(recorded);
+    }
+    void finish(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getSuccesses() {
+        return successes.sum();
+    }
+    public long getErrors() {
+        return errors.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+    public double throughput() {
+        return elapsedNanos == 0 ? 0 : (getSuccesses() + getErrors()) / (elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+    public synchronized long percentile(double percentile, TimeUnit unit) {
+        return latencies.percentile(percentile, unit);
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder report = new StringBuilder()
+                .append(mode == LoadGenerator.Mode.CLOSED_LOOP ?
+                        "closed loop, " + concurrency + " workers" :
+                        String.format("open loop at %.1f/s, at most %d in flight", targetRatePerSecond, concurrency))
+                .append(String.format(": %d invocations in %d ms (%.1f/s), %d errors",
+                        getSuccesses() + getErrors(), TimeUnit.NANOSECONDS.toMillis(elapsedNanos), throughput(), getErrors()))
+                .append("\n\tlatency: ").append(latencies.summary(TimeUnit.MICROSECONDS));
+        new TreeMap<>(errors).forEach((error, count) ->
+                report.append("\n\t").append(count.sum()).append(" x ").append(error));
+        return report.toString();
+    }
+}
@@ -0,0 +1,58 @@
+package org.sindaryn.testifi.service;
+
+import org.sindaryn.apifi.service.ApiLogic;
+import org.sindaryn.apifi.service.ApiMetaOperations;
+import org.sindaryn.datafi.reflection.ReflectionCache;
+import org.sindaryn.datafi.service.BaseDataManager;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.sindaryn.testifi.StaticUtils.*;
+
+/**
+ * Repeatable invocations of an entity's read resolvers by name, for tests which time them.
+ * Arguments are sampled from the database once, up front, so that sampling isn't part of what's measured.
+ */
+@SuppressWarnings("unchecked")
+public interface ResolverCalls {
+
+    String[] READ_RESOLVERS = {"getAll", "getById", "getCollectionById", "fuzzySearch", "getBy", "getByUnique", "getAllBy"};
+
+    static <T, E extends ApiMetaOperations<T>> Supplier<Object>
+    readResolverCall(String resolver, String fieldName, Class<?> clazz, BaseDataManager<T> dataManager,
+                     ReflectionCache reflectionCache, E metaOps){
+        switch (resolver){
+            case "getAll":
+                return () -> ApiLogic.getAll(clazz, dataManager, reflectionCache, metaOps, 0, pageSize(), null, null);
+            case "getById": {
+                List<?> ids = BenchmarkSupport.sampleIds(clazz, dataManager);
+                AtomicInteger next = new AtomicInteger();
+                return () -> ApiLogic.getById(clazz, dataManager, metaOps, ids.get(next.getAndIncrement() % ids.size()));
+            }
+            case "getCollectionById": {
+                List<?> ids = BenchmarkSupport.sampleIds(clazz, dataManager);
+                return () -> ApiLogic.getCollectionById(dataManager, ids);
+            }
+            case "fuzzySearch": {
+                String searchTerm = BenchmarkSupport.fuzzySearchTerm(clazz, dataManager, reflectionCache);
+                return () -> ApiLogic.fuzzySearch(clazz, dataManager, metaOps, 0, pageSize(), searchTerm, null, null);
+            }
+            case "getBy": {
+                Object value = BenchmarkSupport.sampleValue(clazz, dataManager, fieldName, reflectionCache);
+                return () -> ApiLogic.getBy(dataManager, metaOps, fieldName, value);
+            }
+            case "getByUnique": {
+                Object value = BenchmarkSupport.sampleValue(clazz, dataManager, fieldName, reflectionCache);
+                return () -> ApiLogic.getByUnique(clazz, dataManager, metaOps, fieldName, value);
+            }
+            case "getAllBy": {
+                List<Object> values = BenchmarkSupport.sampleValues(clazz, dataManager, fieldName, reflectionCache);
+                return () -> ApiLogic.getAllBy(dataManager, metaOps, fieldName, values);
+            }
+            default:
+                throw new IllegalArgumentException("unsupported resolver '" + resolver + "' of " + clazz.getSimpleName());
+        }
+    }
+}
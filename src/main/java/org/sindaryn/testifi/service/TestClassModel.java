@@ -0,0 +1,81 @@
+package org.sindaryn.testifi.service;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.TypeName;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Everything an entity's test class is generated from, read off the entity's elements on the processing thread.
+ * Holds neither elements nor type mirrors - only names, flags and (immutable) JavaPoet specs - so that
+ * {@link TestMethodSpecs} can assemble the test class from it on any thread.
+ */
+@Getter
+@RequiredArgsConstructor
+public class TestClassModel {
+    private final String packageName;
+    private final String className;
+    private final ClassName entity;
+    //pascal case simple name of the entity
+    private final String entityName;
+    private final String dataManagerName;
+    private final String metaOpsName;
+    private final String tableLock;
+    private final boolean exposed;
+    private final boolean readOnly;
+    private final boolean archivable;
+    private final boolean fuzzySearchable;
+    private final boolean junit5;
+    private final boolean stress;
+    private final boolean scaling;
+    //autowired fields, in declaration order - data managers, meta operations, the reflection cache and the entity mocker
+    private final List<FieldSpec> fields;
+    private final List<EmbeddedField> embeddedFields;
+    private final List<ResolverField> getAllByFields;
+    private final List<ResolverField> getByFields;
+    private final List<ResolverField> getByUniqueFields;
+    private final List<Resolver> resolvers;
+    private final List<Budget> budgets;
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class ResolverField {
+        private final String name;
+        private final String pascalName;
+    }
+
+    //a field embedding another entity, or a collection thereof
+    @Getter
+    @RequiredArgsConstructor
+    public static class EmbeddedField {
+        private final String name;
+        private final String pascalName;
+        //the embedded entity, or the element type of the embedded collection
+        private final TypeName type;
+        private final boolean collection;
+        private final boolean exposeDirectly;
+        private final String dataManagerName;
+        //null unless this is a collection
+        private final String embeddedCollectionMetaOpsName;
+        private final String tableLock;
+    }
+
+    //a custom resolver, as declared by @WithResolver
+    @Getter
+    @RequiredArgsConstructor
+    public static class Resolver {
+        private final String name;
+        private final List<String> args;
+    }
+
+    //a validated @PerformanceBudget
+    @Getter
+    @RequiredArgsConstructor
+    public static class Budget {
+        private final String resolver;
+        private final String field;
+    }
+}
@@ -13,11 +13,23 @@ import org.sindaryn.datafi.service.BaseDataManager;
 import org.sindaryn.datafi.service.DataManager;
 import org.sindaryn.mockeri.generator.EntityMocker;
 import org.sindaryn.mockeri.generator.TestDataGenerator;
+import org.sindaryn.testifi.ClassMetadata;
 import org.sindaryn.testifi.StaticUtils;
+import org.sindaryn.testifi.annotations.PerformanceBudget;
+import org.sindaryn.testifi.instrumentation.ApiCallMetrics;
+import org.sindaryn.testifi.instrumentation.LatencyRecorder;
+import org.sindaryn.testifi.instrumentation.ScalingCurve;
+import org.sindaryn.testifi.instrumentation.StatementCapture;
+import org.sindaryn.testifi.instrumentation.StressReport;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Sort;
 
 import java.lang.reflect.Field;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static org.hibernate.internal.util.collections.ArrayHelper.toList;
@@ -27,7 +39,6 @@ import static org.sindaryn.datafi.StaticUtils.*;
 import static org.sindaryn.datafi.reflection.ReflectionCache.getClassFields;
 import static org.sindaryn.mockeri.StaticUtils.isId;
 
-import static org.sindaryn.mockeri.generator.TestDataGenerator.randomFrom;
 import static org.sindaryn.testifi.StaticUtils.*;
 import static org.sindaryn.testifi.service.EquivalencyMatcher.isEqualTo;
 
@@ -37,24 +48,30 @@ public interface TestLogic {
     //test methods
     static <T, E extends ApiMetaOperations<T>> void
     getAllTest(Class<?> clazz, BaseDataManager<T> dataManager, ReflectionCache reflectionCache, E metaOps){
-        int offset = 0;
-        int limit = totalCount(clazz, dataManager);
-        Collection<T> allTs = dataManager.findAll();
-        Collection<T> allApiFetchedTs = ApiLogic
-                .getAll(clazz, dataManager, reflectionCache, metaOps, offset, limit, null, null);
-        assertThat(
-            "result of api call to 'getAll" + pluralCamelCaseName(clazz) + 
-                   "()' " + " equals original entries in database",
-                allTs,
-                isEqualTo(allApiFetchedTs));
+        //walk both the database and the api page by page, so that only a single page of each is ever in memory
+        int limit = pageSize();
+        String idField = ClassMetadata.of(clazz).idField().getName();
+        Page<T> page = dataManager.findAll(idOrderedPage(clazz, 0));
+        while (true){
+            final int pageNumber = page.getNumber();
+            Collection<T> apiFetchedPage = ApiCallMetrics.record("getAll", clazz, () -> ApiLogic
+                    .getAll(clazz, dataManager, reflectionCache, metaOps, pageNumber, limit, idField, Sort.Direction.ASC));
+            assertThat(
+                "result of api call to 'getAll" + pluralCamelCaseName(clazz) +
+                       "()' " + " equals original entries in database (page " + page.getNumber() + ")",
+                    page.getContent(),
+                    isEqualTo(apiFetchedPage));
+            if(!page.hasNext()) break;
+            page = dataManager.findAll(idOrderedPage(clazz, page.getNumber() + 1));
+        }
     }
 
     static <T, E extends ApiMetaOperations<T>> void
     fuzzySearchTest(
-            Class<?> clazz, BaseDataManager<T> dataManager, ReflectionCache reflectionCache, E metaOps){
+            Class<?> clazz, BaseDataManager<T> dataManager, ReflectionCache reflectionCache, EntityMocker entityMocker, E metaOps){
         int offset = 0;
-        int limit = totalCount(clazz, dataManager);
-        Collection<T> allTs = dataManager.findAll();
+        Collection<T> allTs = ownedRows(clazz, dataManager, entityMocker);
+        int limit = allTs.size();
         Field toSearchBy = resolveFieldToFuzzySearchBy(clazz, reflectionCache);
         WordGenerator wordGenerator = new WordGenerator();
         String searchTerm = wordGenerator.newWord(ThreadLocalRandom.current().nextInt(3, 5));
@@ -63,8 +80,8 @@ public interface TestLogic {
         String testValue = prefix + searchTerm + suffix;
         allTs.forEach(t -> setField(t, testValue, toSearchBy.getName()));
         dataManager.saveAll(allTs);
-        Collection<T> allApiFuzzySearchFetchedTs = ApiLogic
-                .fuzzySearch(clazz, dataManager, metaOps, offset, limit, searchTerm, null, null);
+        Collection<T> allApiFuzzySearchFetchedTs = ApiCallMetrics.record("fuzzySearch", clazz, () -> ApiLogic
+                .fuzzySearch(clazz, dataManager, metaOps, offset, limit, searchTerm, null, null));
         assertThat(
                 "result of api call to " + pluralCamelCaseName(clazz) + "FuzzySearch" +
                         "(...)' " + " equals original entries in database",
@@ -75,9 +92,9 @@ public interface TestLogic {
 
     static <T, E extends ApiMetaOperations<T>> void
     getByIdTest(Class<?> clazz, BaseDataManager<T> dataManager, E metaOps, ReflectionCache reflectionCache){
-        T toGetById = randomFrom(dataManager.findAll());
+        T toGetById = randomInstance(clazz, dataManager);
         Object id = getId(toGetById, reflectionCache);
-        T fetchedById = ApiLogic.getById(clazz, dataManager, metaOps, id);
+        T fetchedById = ApiCallMetrics.record("getById", clazz, () -> ApiLogic.getById(clazz, dataManager, metaOps, id));
         assertThat(clazz.getSimpleName() + " successfully fetched by id",
                 toGetById,
                 isEqualTo(fetchedById));
@@ -85,9 +102,10 @@ public interface TestLogic {
 
     static <T, E extends ApiMetaOperations<T>> void
     getByUniqueTest(Class<?> clazz, BaseDataManager<T> dataManager, E metaOps, String fieldName, ReflectionCache reflectionCache){
-        T toGet = randomFrom(dataManager.findAll());
+        T toGet = randomInstance(clazz, dataManager);
         Object uniqueValue = reflectionCache.getEntitiesCache().get(clazz.getSimpleName()).invokeGetter(toGet, fieldName);
-        T fetched = ApiLogic.getByUnique(clazz, dataManager, metaOps, fieldName, uniqueValue);
+        T fetched = ApiCallMetrics.record("getByUnique(" + fieldName + ")", clazz,
+                () -> ApiLogic.getByUnique(clazz, dataManager, metaOps, fieldName, uniqueValue));
         assertThat(
                 "Successfully fetched a " + toPascalCase(clazz.getSimpleName()) +
                       " by the unique value of " + fieldName + " = " + uniqueValue.toString(),
@@ -97,10 +115,11 @@ public interface TestLogic {
     static <T, E extends ApiMetaOperations<T>> void
     getByTest(Class<?> clazz, BaseDataManager<T> dataManager, E metaOps, String fieldName, ReflectionCache reflectionCache){
 
-        T toGet = randomFrom(dataManager.findAll());
+        T toGet = randomInstance(clazz, dataManager);
         final CachedEntityType entityType = reflectionCache.getEntitiesCache().get(clazz.getSimpleName());
         Object value = entityType.invokeGetter(toGet, fieldName);
-        Collection<T> fetched = ApiLogic.getBy(dataManager, metaOps, fieldName, value);
+        Collection<T> fetched = ApiCallMetrics.record("getBy(" + fieldName + ")", clazz,
+                () -> ApiLogic.getBy(dataManager, metaOps, fieldName, value));
         for(T instance : fetched){
             assertThat(
                     "successfully fetched instance of " + clazz.getSimpleName() +
@@ -116,7 +135,8 @@ public interface TestLogic {
         Map<Object, T> toGet = firstRandomNIdMap(clazz, dataManager, reflectionCache);
         final CachedEntityType entityType = reflectionCache.getEntitiesCache().get(clazz.getSimpleName());
         List<?> valuesList = fieldValues(fieldName, Arrays.asList(toGet.values().toArray()), entityType);
-        Collection<T> fetched = ApiLogic.getAllBy(dataManager, metaOps, fieldName, valuesList);
+        Collection<T> fetched = ApiCallMetrics.record("getAllBy(" + fieldName + ")", clazz,
+                () -> ApiLogic.getAllBy(dataManager, metaOps, fieldName, valuesList));
         assertTrue(fetched.size() >= toGet.size());
         for(T fetchedInstance : fetched){
             T toGetInstance = toGet.get(getId(fetchedInstance, reflectionCache));
@@ -129,7 +149,7 @@ public interface TestLogic {
     selectByTest(Class<?> clazz, BaseDataManager<T> dataManager, E metaOps,
                  String resolverName, Collection<String> fieldNames, EntityMocker entityMocker, ReflectionCache reflectionCache){
 
-        Map<Object, T> toSelect = firstRandomNIdMap(clazz, dataManager, reflectionCache);
+        Map<Object, T> toSelect = ownedRowsIdMap(clazz, dataManager, entityMocker, reflectionCache);
 
         final CachedEntityType entityType = reflectionCache.getEntitiesCache().get(clazz.getSimpleName());
         Map<String, Object> args = new HashMap<>();
@@ -143,7 +163,9 @@ public interface TestLogic {
                 }
             }
         }
-        Collection<T> selected = ApiLogic.selectBy(dataManager, metaOps, resolverName, new ArrayList<>(args.values()));
+        List<Object> argValues = new ArrayList<>(args.values());
+        Collection<T> selected = ApiCallMetrics.record(resolverName, clazz,
+                () -> ApiLogic.selectBy(dataManager, metaOps, resolverName, argValues));
         assertTrue(selected.size() >= toSelect.size());
         for (T selectedInstance : selected){
             T toSelectInstance = toSelect.get(getId(selectedInstance, reflectionCache));
@@ -155,33 +177,37 @@ public interface TestLogic {
     static <T, E extends ApiMetaOperations<T>> void
     addTest(Class<?> clazz, BaseDataManager<T> dataManager, EntityMocker entityMocker, E metaOps){
         T toAdd = entityMocker.instantiateEntity(clazz);
-        T added = ApiLogic.add(dataManager, toAdd, metaOps);
+        T added = withStatementCapture("add", clazz, 1, StatementCapture.Kind.INSERT,
+                () -> ApiLogic.add(dataManager, toAdd, metaOps));
         assertThat(clazz.getSimpleName() + " successfully added", toAdd, isEqualTo(added));
     }
 
     static <T, E extends ApiMetaOperations<T>>  void
     updateTest(Class<?> clazz, BaseDataManager<T> dataManager, EntityMocker entityMocker,
                ReflectionCache reflectionCache, E metaOps){
-        T original = randomInstance(clazz, dataManager);
+        T original = ownedRow(clazz, dataManager, entityMocker);
         T updated = entityMocker.mockUpdate(original);
         setField(updated, getId(original, reflectionCache), "id");
-        T updatedOriginal = ApiLogic.update(dataManager, updated, reflectionCache, metaOps);
+        T updatedOriginal = withStatementCapture("update", clazz, 1, StatementCapture.Kind.UPDATE,
+                () -> ApiLogic.update(dataManager, updated, reflectionCache, metaOps));
         assertThat("successfully updated " + clazz.getSimpleName(),
                    updated,  isEqualTo(updatedOriginal));
     }
 
     static <T extends Archivable, E extends ApiMetaOperations<T>>  void
-    archiveTest(Class<?> clazz, ArchivableDataManager<T> dataManager, ReflectionCache reflectionCache, E metaOps){
-        T instance = randomInstance(clazz, dataManager);
+    archiveTest(Class<?> clazz, ArchivableDataManager<T> dataManager, ReflectionCache reflectionCache,
+                EntityMocker entityMocker, E metaOps){
+        T instance = ownedRow(clazz, dataManager, entityMocker);
         final String simpleName = clazz.getSimpleName();
         assertFalse("Default state of " + simpleName + " is non archived", instance.getIsArchived());
-        T archivedInstance = ApiLogic.archive(dataManager, instance, reflectionCache, metaOps);
+        T archivedInstance = withStatementCapture("archive", clazz, 1, StatementCapture.Kind.UPDATE,
+                () -> ApiLogic.archive(dataManager, instance, reflectionCache, metaOps));
         assertTrue("Instance of " + simpleName + " successfully archived", archivedInstance.getIsArchived());
     }
 
     static <T extends Archivable, E extends ApiMetaOperations<T>>  void
-    archiveCollectionTest(Class<?> clazz, ArchivableDataManager<T> dataManager, E metaOps){
-        List<T> instances = firstRandomN(clazz, dataManager);
+    archiveCollectionTest(Class<?> clazz, ArchivableDataManager<T> dataManager, EntityMocker entityMocker, E metaOps){
+        List<T> instances = ownedRows(clazz, dataManager, entityMocker);
         int amountToArchive = instances.size();
         final String simpleName = clazz.getSimpleName();
         boolean defaultStateIsNonArchived = true;
@@ -191,7 +217,9 @@ public interface TestLogic {
                 break;
             }
         assertTrue("Default state of " + simpleName + " is non archived", defaultStateIsNonArchived);
-        List<T> archivedInstances = ApiLogic.archiveCollection(dataManager, instances, metaOps);
+        List<T> archivedInstances = withStatementCapture("archiveCollection", clazz,
+                amountToArchive, StatementCapture.Kind.UPDATE,
+                () -> ApiLogic.archiveCollection(dataManager, instances, metaOps));
         boolean successfullyArchivedAllInstances = true;
         for (T instance : archivedInstances)
             if(!instance.getIsArchived()){
@@ -203,18 +231,19 @@ public interface TestLogic {
 
     static <T extends Archivable, E extends ApiMetaOperations<T>>  void
     deArchiveTest(Class<?> clazz, ArchivableDataManager<T> dataManager,
-                  ReflectionCache reflectionCache, E metaOps){
-        T instance = randomInstance(clazz, dataManager);
+                  ReflectionCache reflectionCache, EntityMocker entityMocker, E metaOps){
+        T instance = ownedRow(clazz, dataManager, entityMocker);
         final String simpleName = clazz.getSimpleName();
         assertFalse("Default state of " + simpleName + " is non archived", instance.getIsArchived());
         T archivedInstance = dataManager.archive(instance);
-        T deArchivedInstance = ApiLogic.deArchive(dataManager, archivedInstance, reflectionCache, metaOps);
+        T deArchivedInstance = withStatementCapture("deArchive", clazz, 1, StatementCapture.Kind.UPDATE,
+                () -> ApiLogic.deArchive(dataManager, archivedInstance, reflectionCache, metaOps));
         assertFalse("Instance of " + simpleName + " successfully de archived", deArchivedInstance.getIsArchived());
     }
 
     static <T extends Archivable, E extends ApiMetaOperations<T>>  void
-    deArchiveCollectionTest(Class<?> clazz, ArchivableDataManager<T> dataManager, E metaOps){
-        List<T> instances = firstRandomN(clazz, dataManager);
+    deArchiveCollectionTest(Class<?> clazz, ArchivableDataManager<T> dataManager, EntityMocker entityMocker, E metaOps){
+        List<T> instances = ownedRows(clazz, dataManager, entityMocker);
         int amountToArchive = instances.size();
         final String simpleName = clazz.getSimpleName();
         boolean defaultStateIsNonArchived = true;
@@ -225,7 +254,9 @@ public interface TestLogic {
             }
         assertTrue("Default state of " + simpleName + " is non archived", defaultStateIsNonArchived);
         List<T> archivedInstances = dataManager.archiveCollection(instances);
-        List<T> deArchivedInstances = ApiLogic.deArchiveCollection(dataManager, archivedInstances, metaOps);
+        List<T> deArchivedInstances = withStatementCapture("deArchiveCollection", clazz,
+                archivedInstances.size(), StatementCapture.Kind.UPDATE,
+                () -> ApiLogic.deArchiveCollection(dataManager, archivedInstances, metaOps));
         boolean successfullyDeArchivedAllInstances = true;
         for (T instance : deArchivedInstances)
             if(instance.getIsArchived()){
@@ -237,20 +268,28 @@ public interface TestLogic {
 
     static <T, E extends ApiMetaOperations<T>>  void
     deleteTest(Class<?> clazz, BaseDataManager<T> dataManager, ReflectionCache reflectionCache, EntityMocker entityMocker, E metaOps){
-        T toDelete = randomInstance(clazz, dataManager);
-        T deleted = ApiLogic.delete(dataManager, reflectionCache, toDelete, metaOps);
+        T toDelete = ownedRow(clazz, dataManager, entityMocker);
+        T deleted = withStatementCapture("delete", clazz, 1, StatementCapture.Kind.DELETE,
+                () -> ApiLogic.delete(dataManager, reflectionCache, toDelete, metaOps));
         Optional<T> shouldNotBePresent = dataManager.findById(getId(deleted, reflectionCache));
         assertFalse(clazz.getSimpleName() + " successfully deleted", shouldNotBePresent.isPresent());
-        entityMocker.instantiateEntity(clazz);
+        if(!isPartitioned()) entityMocker.instantiateEntity(clazz);
     }
 
     static <T>  void
     getCollectionByIdTest(Class<?> clazz, BaseDataManager<T> dataManager){
-        Collection<T> present = dataManager.findAll();
-        List<?> ids = dataManager.idList(present);
-        Collection<T> fetched = ApiLogic.getCollectionById(dataManager, ids);
-        assertThat( "successfully fetched " + present.size() + " " + toPlural(clazz.getSimpleName()) + " by id",
-                present, isEqualTo(fetched));
+        Page<T> page = dataManager.findAll(idOrderedPage(clazz, 0));
+        while (true){
+            List<T> present = page.getContent();
+            List<?> ids = dataManager.idList(present);
+            Collection<T> fetched = ApiCallMetrics.record("getCollectionById", clazz,
+                    () -> ApiLogic.getCollectionById(dataManager, ids));
+            assertThat( "successfully fetched " + present.size() + " " + toPlural(clazz.getSimpleName()) + " by id" +
+                            " (page " + page.getNumber() + ")",
+                    present, isEqualTo(fetched));
+            if(!page.hasNext()) break;
+            page = dataManager.findAll(idOrderedPage(clazz, page.getNumber() + 1));
+        }
     }
 
     static <T, E extends ApiMetaOperations<T>>  void
@@ -259,7 +298,9 @@ public interface TestLogic {
         List<T> toAdd = new ArrayList<>();
         for (int i = 0; i < amountToAdd; i++)
             toAdd.add(entityMocker.instantiateTransientEntity(clazz));
-        Collection<T> added = ApiLogic.addCollection(dataManager, toAdd, metaOps);
+        Collection<T> added = withStatementCapture("addCollection", clazz,
+                amountToAdd, StatementCapture.Kind.INSERT,
+                () -> ApiLogic.addCollection(dataManager, toAdd, metaOps));
         assertThat( "successfully added " + amountToAdd + " " + toPlural(clazz.getSimpleName()),
                 toAdd,
                 isEqualTo(added));
@@ -267,24 +308,168 @@ public interface TestLogic {
 
     static <T, E extends ApiMetaOperations<T>>  void
     updateCollectionTest(Class<?> clazz, BaseDataManager<T> dataManager, EntityMocker entityMocker, E metaOps){
-        List<T> updated = firstRandomN(clazz, dataManager);
+        List<T> updated = ownedRows(clazz, dataManager, entityMocker);
         int amountToUpdate = updated.size();
         updated.forEach(entityMocker::mockUpdate);
-        Collection<T> updatedViaApi = ApiLogic.updateCollection(dataManager, updated, metaOps);
+        Collection<T> updatedViaApi = withStatementCapture("updateCollection", clazz,
+                amountToUpdate, StatementCapture.Kind.UPDATE,
+                () -> ApiLogic.updateCollection(dataManager, updated, metaOps));
         assertThat("successfully updated " + amountToUpdate + " " + toPlural(clazz.getSimpleName()),
                 updated,  isEqualTo(updatedViaApi));
     }
 
     static <T, E extends ApiMetaOperations<T>>  void
     deleteCollectionTest(Class<?> clazz, BaseDataManager<T> dataManager, EntityMocker entityMocker, E metaOps){
-        List<T> toDelete = firstRandomN(clazz, dataManager);
+        List<T> toDelete = ownedRows(clazz, dataManager, entityMocker);
         int amountToDelete = toDelete.size();
-        ApiLogic.deleteCollection(dataManager, toDelete, metaOps);
+        withStatementCapture("deleteCollection", clazz, amountToDelete, StatementCapture.Kind.DELETE,
+                () -> ApiLogic.deleteCollection(dataManager, toDelete, metaOps));
         Collection<?> ids = dataManager.idList(toDelete);
         Collection<T> shouldBeEmpty = dataManager.findAllById(ids);
         assertTrue(amountToDelete + " " + toPlural(clazz.getSimpleName()) + " successfully deleted",
                 shouldBeEmpty.isEmpty());
-        for (int i = 0; i < amountToDelete; i++) entityMocker.instantiateEntity(clazz);
+        if(!isPartitioned()) populate(clazz, dataManager, entityMocker, amountToDelete);
+    }
+
+    static <T, E extends ApiMetaOperations<T>> void
+    performanceBudgetTest(Class<?> clazz, BaseDataManager<T> dataManager, ReflectionCache reflectionCache,
+                          EntityMocker entityMocker, E metaOps, String resolver, String fieldName){
+        PerformanceBudget budget = Arrays
+                .stream(clazz.getAnnotationsByType(PerformanceBudget.class))
+                .filter(candidate -> candidate.resolver().equals(resolver) && candidate.field().equals(fieldName))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException(
+                        "no performance budget for " + resolver + " declared on " + clazz.getSimpleName()));
+        long missing = budget.rows() - dataManager.count();
+        if(missing > 0) populate(clazz, dataManager, entityMocker, Math.toIntExact(missing));
+        //otherwise every timed call would auto flush and dirty check all of the rows just seeded
+        TestPersistence.flushAndClear();
+
+        Supplier<Object> call = ResolverCalls.readResolverCall(resolver, fieldName, clazz, dataManager, reflectionCache, metaOps);
+        for (int i = 0; i < budget.warmupIterations(); i++) call.get();
+        LatencyRecorder latencies = new LatencyRecorder();
+        for (int i = 0; i < budget.iterations(); i++) {
+            long start = System.nanoTime();
+            call.get();
+            latencies.record(System.nanoTime() - start);
+        }
+        long p99Micros = latencies.percentile(99, TimeUnit.MICROSECONDS);
+        assertTrue(
+                resolver + " of " + clazz.getSimpleName() + " over " + budget.rows() + " rows exceeded its p99 budget of " +
+                        budget.p99Millis() + " ms (" + latencies.summary(TimeUnit.MICROSECONDS) + ")",
+                p99Micros <= TimeUnit.MILLISECONDS.toMicros(budget.p99Millis()));
+    }
+
+    /**
+     * Times a read resolver at geometrically growing table sizes (testifi.scaling.sizes), and fails
+     * if its median latency grows clearly faster than n log n. The measured curve is written to
+     * the scaling report directory either way. Fails as well if fewer than two distinct sizes could be
+     * measured, since no curve can be fitted through a single one.
+     */
+    static <T, E extends ApiMetaOperations<T>> void
+    scalingTest(Class<?> clazz, BaseDataManager<T> dataManager, ReflectionCache reflectionCache,
+                EntityMocker entityMocker, E metaOps, String resolver, String fieldName){
+        int iterations = intSetting("testifi.scaling.iterations", 20);
+        int warmupIterations = intSetting("testifi.scaling.warmup", 5);
+        double maxExponent = Double.parseDouble(setting("testifi.scaling.max-exponent", "1.3"));
+        ScalingCurve curve = new ScalingCurve();
+        for(String size : setting("testifi.scaling.sizes", "1000,4000,16000").split(",")){
+            int rows = Integer.parseInt(size.trim());
+            long missing = rows - dataManager.count();
+            if(missing > 0) populate(clazz, dataManager, entityMocker, Math.toIntExact(missing));
+            //otherwise every timed call would auto flush and dirty check all of the rows seeded so far
+            TestPersistence.flushAndClear();
+            Supplier<Object> call = ResolverCalls.readResolverCall(resolver, fieldName, clazz, dataManager, reflectionCache, metaOps);
+            for (int i = 0; i < warmupIterations; i++) call.get();
+            LatencyRecorder latencies = new LatencyRecorder();
+            for (int i = 0; i < iterations; i++) {
+                long start = System.nanoTime();
+                call.get();
+                latencies.record(System.nanoTime() - start);
+            }
+            curve.add(dataManager.count(), latencies.percentile(50, TimeUnit.NANOSECONDS));
+        }
+        String name = clazz.getSimpleName() + "-" + resolver + (fieldName.isEmpty() ? "" : "-" + fieldName);
+        curve.writeCsv(reportFile("scaling", name + ".csv"));
+        assertTrue(
+                "could not scale " + clazz.getSimpleName() + " - its table already holds at least as many rows as " +
+                "all but one of testifi.scaling.sizes, " + curve,
+                curve.distinctSizes() >= 2);
+        assertTrue(
+                resolver + (fieldName.isEmpty() ? "" : "(" + fieldName + ")") + " of " + clazz.getSimpleName() +
+                " scales super linearly, " + curve + "\n(at most exponent " + maxExponent + " expected)",
+                curve.exponent() <= maxExponent);
+    }
+
+    /**
+     * Has testifi.stress.workers concurrent workers update, update in bulk and (if archivable) archive and
+     * de archive an overlapping set of testifi.stress.rows rows for testifi.stress.seconds seconds.
+     * Optimistic locking failures are expected under such contention, whereas deadlocks and any other
+     * errors fail the test. Runs outside of the test's transaction, since every worker needs its own -
+     * hence only rows created here are stressed, and they're deleted again once the workers are done.
+     */
+    static <T, E extends ApiMetaOperations<T>> void
+    stressTest(Class<?> clazz, BaseDataManager<T> dataManager, ReflectionCache reflectionCache,
+               EntityMocker entityMocker, E metaOps) throws InterruptedException {
+        int workers = intSetting("testifi.stress.workers", 32);
+        int rows = intSetting("testifi.stress.rows", 20);
+        long durationNanos = TimeUnit.SECONDS.toNanos(intSetting("testifi.stress.seconds", 10));
+        //committed as soon as they're persisted, so no other test's rows may be touched
+        List<Object> ids = new ArrayList<>(dataManager.idList(populate(clazz, dataManager, entityMocker, rows)));
+        boolean archivable = dataManager instanceof ArchivableDataManager;
+
+        StressReport report = new StressReport();
+        ExecutorService executor = workerExecutor(workers);
+        long start = System.nanoTime();
+        long deadline = start + durationNanos;
+        try {
+            for (int i = 0; i < workers; i++)
+                executor.execute(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (System.nanoTime() < deadline){
+                        int operation = random.nextInt(archivable ? 3 : 2);
+                        String name = operation == 0 ? "update" : operation == 1 ? "updateCollection" : "archiveCollection";
+                        try {
+                            if(operation == 0){
+                                Object id = ids.get(random.nextInt(ids.size()));
+                                T updated = entityMocker.mockUpdate(dataManager.findById(id).orElseThrow(
+                                        () -> new IllegalStateException(clazz.getSimpleName() + " #" + id + " vanished")));
+                                setField(updated, id, "id");
+                                ApiLogic.update(dataManager, updated, reflectionCache, metaOps);
+                            }else{
+                                //deliberately unordered, so that workers lock overlapping rows in different orders
+                                List<Object> subset = new ArrayList<>(ids);
+                                Collections.shuffle(subset, random);
+                                List<T> collection = dataManager.findAllById(subset.subList(0, Math.min(subset.size(), random.nextInt(2, 6))));
+                                if(operation == 1){
+                                    collection.forEach(entityMocker::mockUpdate);
+                                    ApiLogic.updateCollection(dataManager, collection, metaOps);
+                                }else{
+                                    ArchivableDataManager archivableDataManager = (ArchivableDataManager) dataManager;
+                                    List archived = ApiLogic.archiveCollection(archivableDataManager, (List) collection, (ApiMetaOperations) metaOps);
+                                    ApiLogic.deArchiveCollection(archivableDataManager, archived, (ApiMetaOperations) metaOps);
+                                }
+                            }
+                            report.success(name);
+                        } catch (Throwable error) {
+                            report.failure(name, error);
+                        }
+                    }
+                });
+        } finally {
+            executor.shutdown();
+            if(!executor.awaitTermination(durationNanos + TimeUnit.MINUTES.toNanos(1), TimeUnit.NANOSECONDS)){
+                executor.shutdownNow();
+                //interrupted workers still have to finish their current call before the rows can be deleted
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            }
+            report.finish(System.nanoTime() - start);
+            ApiLogic.deleteCollection(dataManager, dataManager.findAllById(ids), metaOps);
+        }
+        report.writeTo(reportFile("stress", clazz.getSimpleName() + ".txt"));
+        assertEquals("deadlocks while stressing " + clazz.getSimpleName() + " - " + report, 0, report.getDeadlocks());
+        assertEquals("unexpected errors while stressing " + clazz.getSimpleName() + " - " + report, 0,
+                report.getErrorsOtherThan("OptimisticLockException", "StaleObjectStateException", "StaleStateException"));
     }
 
     static <T, HasT> void getAsEmbeddedEntityTest(Class<?> tClazz,
@@ -294,8 +479,8 @@ public interface TestLogic {
                                                   String fieldName,
                                                   EntityMocker entityMocker,
                                                   ReflectionCache reflectioncache) {
-        if(hasTDataManager.count() == 0) populate(hasTClazz, entityMocker, 20);
-        List<HasT> owners = firstRandomN(hasTClazz, hasTDataManager);
+        if(!isPartitioned() && hasTDataManager.count() == 0) populate(hasTClazz, hasTDataManager, entityMocker, 20);
+        List<HasT> owners = ownedRows(hasTClazz, hasTDataManager, entityMocker);
         Collection<T> embeddedEntities = new ArrayList<>();
         T embeddedEntity;
         for (HasT owner : owners) {
@@ -304,7 +489,13 @@ public interface TestLogic {
             embeddedEntities.add(embeddedEntity);
         }
         owners = hasTDataManager.saveAll(owners);
-        Collection<T> fetchedAsEmbedded = ApiLogic.getAsEmbeddedEntity(tDataManager, owners, fieldName, reflectioncache);
+        final List<HasT> fetchedFrom = reloaded(owners, hasTDataManager, reflectioncache);
+        StatementCapture.Capture capture = StatementCapture.start();
+        Collection<T> fetchedAsEmbedded = StatementCapture.capture(capture,
+                () -> ApiCallMetrics.record("getAsEmbeddedEntity(" + fieldName + ")", hasTClazz,
+                        () -> ApiLogic.getAsEmbeddedEntity(tDataManager, fetchedFrom, fieldName, reflectioncache)));
+        ApiCallMetrics.recordStatements("getAsEmbeddedEntity(" + fieldName + ")", hasTClazz, capture);
+        assertNoNPlusOneSelects(hasTClazz.getSimpleName() + "." + fieldName, owners.size(), capture);
         assertThat(
                 "successfully fetched " + fetchedAsEmbedded.size() + " " + toPlural(fieldName) +
                         " embedded within " + owners.size() + " " + toPlural(hasTClazz.getSimpleName()),
@@ -319,18 +510,35 @@ public interface TestLogic {
                                                              String fieldName,
                                                              EntityMocker entityMocker,
                                                              ReflectionCache reflectioncache) {
-        if(hasTsDataManager.count() == 0) populate(hasTsClazz, entityMocker, 20);
-        List<HasTs> owners = firstRandomN(hasTsClazz, hasTsDataManager);
+        if(!isPartitioned() && hasTsDataManager.count() == 0) populate(hasTsClazz, hasTsDataManager, entityMocker, 20);
+        List<HasTs> owners = ownedRows(hasTsClazz, hasTsDataManager, entityMocker);
+        //instantiate the embedded collections of all owners up front, and persist them all in batches
+        List<List<T>> transientCollections = new ArrayList<>();
+        List<T> allEmbedded = new ArrayList<>();
+        for (int i = 0; i < owners.size(); i++) {
+            List<T> transientCollection = transientlyInstantiateCollectionOf(tClazz, entityMocker);
+            transientCollections.add(transientCollection);
+            allEmbedded.addAll(transientCollection);
+        }
+        List<T> allPersistedEmbedded = persistInBatches(allEmbedded, tDataManager);
         Collection<Collection<T>> embeddedEntityCollections = new ArrayList<>();
         Collection<T> embeddedEntityCollection;
-        for (HasTs owner : owners) {
-            embeddedEntityCollection = persistCollectionOf(tClazz, entityMocker);
-            setCollectionField(owner, embeddedEntityCollection, fieldName, entityMocker);
+        int from = 0;
+        for (int i = 0; i < owners.size(); i++) {
+            int to = from + transientCollections.get(i).size();
+            embeddedEntityCollection = new ArrayList<>(allPersistedEmbedded.subList(from, to));
+            setCollectionField(owners.get(i), embeddedEntityCollection, fieldName, entityMocker);
             embeddedEntityCollections.add(embeddedEntityCollection);
+            from = to;
         }
         owners = hasTsDataManager.saveAll(owners);
-        List<List<T>> fetchedAsEmbedded = ApiLogic
-                .getAsEmbeddedCollection(tDataManager, owners, fieldName, reflectioncache);
+        final List<HasTs> fetchedFrom = reloaded(owners, hasTsDataManager, reflectioncache);
+        StatementCapture.Capture capture = StatementCapture.start();
+        List<List<T>> fetchedAsEmbedded = StatementCapture.capture(capture,
+                () -> ApiCallMetrics.record("getAsEmbeddedCollection(" + fieldName + ")", hasTsClazz,
+                        () -> ApiLogic.getAsEmbeddedCollection(tDataManager, fetchedFrom, fieldName, reflectioncache)));
+        ApiCallMetrics.recordStatements("getAsEmbeddedCollection(" + fieldName + ")", hasTsClazz, capture);
+        assertNoNPlusOneSelects(hasTsClazz.getSimpleName() + "." + fieldName, owners.size(), capture);
 
         assertThat(
                 "Successfully fetched " + embeddedEntityCollections.size() +
@@ -339,6 +547,63 @@ public interface TestLogic {
                 embeddedEntityCollections, isEqualTo(fetchedAsEmbedded));
     }
 
+    //the given rows as freshly loaded from the database, in the same order. Everything is flushed and detached first,
+    //so that fetching what they embed isn't served from the first level cache, and N+1 selects actually show up
+    static <T> List<T> reloaded(List<T> rows, BaseDataManager<T> dataManager, ReflectionCache reflectionCache) {
+        List<?> ids = dataManager.idList(rows);
+        TestPersistence.flushAndClear();
+        Map<Object, T> byId = new HashMap<>();
+        for(T row : dataManager.findAllById(ids))
+            byId.put(getId(row, reflectionCache), row);
+        List<T> reloaded = new ArrayList<>();
+        for(Object id : ids)
+            reloaded.add(byId.get(id));
+        return reloaded;
+    }
+
+    /**
+     * Runs a resolver call while capturing the statements it issues. Any changes still pending
+     * once the call returns are flushed through the test's entity manager before the capture stops,
+     * so that they're attributed to the call. With {@code testifi.statements.assert}
+     * set, writing more than one row is expected to reach the database as jdbc batches.
+     */
+    static <R> R withStatementCapture(String resolver, Class<?> clazz, int rows,
+                                      StatementCapture.Kind expectedKind, Supplier<R> call) {
+        StatementCapture.Capture capture = StatementCapture.start();
+        R result = StatementCapture.capture(capture, () -> {
+            R returned = ApiCallMetrics.record(resolver, clazz, call);
+            TestPersistence.flush();
+            return returned;
+        });
+        StatementCapture.log(resolver + " " + rows + " " + clazz.getSimpleName(), capture);
+        ApiCallMetrics.recordStatements(resolver, clazz, capture);
+        if(!StatementCapture.isInstalled() || !Boolean.parseBoolean(setting("testifi.statements.assert", "false")))
+            return result;
+        int statements = capture.statements(expectedKind);
+        //nothing was flushed within the call, so there's nothing to judge
+        if(rows <= 1 || statements <= 1) return result;
+        int roundTrips = capture.roundTrips(expectedKind);
+        assertTrue(
+                resolver + " of " + rows + " " + toPlural(clazz.getSimpleName()) + " issued " + statements + " " +
+                expectedKind + " statements in " + roundTrips + " round trips rather than in jdbc batches " +
+                "(see hibernate.jdbc.batch_size, and note that IDENTITY generated ids rule out batched inserts):" +
+                capture.report(),
+                roundTrips < statements);
+        return result;
+    }
+
+    //fetching an embedded field for n owners should take a bounded number of selects, not one per owner
+    static void assertNoNPlusOneSelects(String embeddedField, int owners, StatementCapture.Capture capture) {
+        if(!StatementCapture.isInstalled()) return;
+        int maxSelects = intSetting("testifi.n-plus-one.max-selects", 5);
+        if(owners <= maxSelects) return;
+        int selects = capture.roundTrips(StatementCapture.Kind.SELECT);
+        assertTrue(
+                "fetching " + embeddedField + " for " + owners + " owners issued " + selects +
+                " selects (at most " + maxSelects + " expected), possible N+1 query:" + capture.report(),
+                selects <= maxSelects);
+    }
+
     static <T, HasTs, E extends EmbeddedCollectionMetaOperations<T, HasTs>>
     void addNewToEmbeddedCollectionTest(Class<?> tClazz,
                                         Class<?> hasTsClazz,
@@ -350,8 +615,9 @@ public interface TestLogic {
                                         E metaOps) {
         HasTs toAddTo = entityMocker.instantiateEntity(hasTsClazz);
         List<T> toAdd = transientlyInstantiateCollectionOf(tClazz, entityMocker);
-        List<T> added = ApiLogic.addNewToEmbeddedCollection(hasTsDataManager, tDataManager, toAddTo,
-                                                            fieldName, toAdd, metaOps, reflectioncache);
+        List<T> added = ApiCallMetrics.record("addNewToEmbeddedCollection(" + fieldName + ")", hasTsClazz,
+                () -> ApiLogic.addNewToEmbeddedCollection(hasTsDataManager, tDataManager, toAddTo,
+                                                          fieldName, toAdd, metaOps, reflectioncache));
         assertThat("successfully added " + added.size() +
                     " " + toPlural(tClazz.getSimpleName()) + " to " +
                     hasTsClazz.getSimpleName(),
@@ -368,9 +634,10 @@ public interface TestLogic {
                                                 ReflectionCache reflectioncache,
                                                 E metaOps) {
         HasTs toAttachTo = entityMocker.instantiateEntity(hasTsClazz);
-        List<T> toAttach = persistCollectionOf(tClazz, entityMocker);
-        List<T> attached = ApiLogic.attachExistingToEmbeddedCollection(hasTsDataManager, tDataManager, toAttachTo,
-                                                                       fieldName, toAttach, metaOps, reflectioncache);
+        List<T> toAttach = persistCollectionOf(tClazz, tDataManager, entityMocker);
+        List<T> attached = ApiCallMetrics.record("attachExistingToEmbeddedCollection(" + fieldName + ")", hasTsClazz,
+                () -> ApiLogic.attachExistingToEmbeddedCollection(hasTsDataManager, tDataManager, toAttachTo,
+                                                                  fieldName, toAttach, metaOps, reflectioncache));
         assertThat("successfully attached " + attached.size() +
                         " pre-existing " + toPlural(tClazz.getSimpleName()) + " to " +
                         hasTsClazz.getSimpleName(),
@@ -387,16 +654,17 @@ public interface TestLogic {
                                       ReflectionCache reflectioncache,
                                       E metaOps) {
         HasTs owner = entityMocker.instantiateEntity(hasTsClazz);
-        List<T> originalEmbeddedCollection = persistCollectionOf(tClazz, entityMocker);
+        List<T> originalEmbeddedCollection = persistCollectionOf(tClazz, tDataManager, entityMocker);
         setCollectionField(owner, originalEmbeddedCollection, fieldName, entityMocker);
         owner = hasTsDataManager.saveAndFlush(owner);
 
         Iterable<T> updatedEmbeddedCollection = Lists.newArrayList(originalEmbeddedCollection);
         updatedEmbeddedCollection.forEach(entityMocker::mockUpdate);
 
-        Collection<T> fetchedEmbeddedCollection = ApiLogic.updateEmbeddedCollection(
-                                                            hasTsDataManager, tDataManager, owner,
-                                                            updatedEmbeddedCollection, metaOps, reflectioncache);
+        final HasTs persistedOwner = owner;
+        Collection<T> fetchedEmbeddedCollection = ApiCallMetrics.record("updateEmbeddedCollection(" + fieldName + ")", hasTsClazz,
+                () -> ApiLogic.updateEmbeddedCollection(hasTsDataManager, tDataManager, persistedOwner,
+                                                        updatedEmbeddedCollection, metaOps, reflectioncache));
         assertThat(
             "successfully updated " + fetchedEmbeddedCollection.size() + " " +
                     fieldName + " in " + hasTsClazz.getSimpleName(),
@@ -413,17 +681,18 @@ public interface TestLogic {
                                           ReflectionCache reflectioncache,
                                           E metaOps) {
         HasTs owner = entityMocker.instantiateEntity(hasTsClazz);
-        List<T> originalEmbeddedCollection = persistCollectionOf(tClazz, entityMocker);
+        List<T> originalEmbeddedCollection = persistCollectionOf(tClazz, tDataManager, entityMocker);
         setCollectionField(owner, originalEmbeddedCollection, fieldName, entityMocker);
         tDataManager.saveAll(originalEmbeddedCollection);
         owner = hasTsDataManager.saveAndFlush(owner);
 
         Collection<T> toRemoveFromCollection = firstRandomEmbeddedN(owner, fieldName, reflectioncache);
 
-        Collection<T> removedFromEmbeddedCollection = ApiLogic.removeFromEmbeddedCollection(
-                        hasTsDataManager, tDataManager, owner,
-                        fieldName, new ArrayList<>(toRemoveFromCollection),
-                        metaOps, reflectioncache);
+        final HasTs persistedOwner = owner;
+        Collection<T> removedFromEmbeddedCollection = ApiCallMetrics.record("removeFromEmbeddedCollection(" + fieldName + ")", hasTsClazz,
+                () -> ApiLogic.removeFromEmbeddedCollection(hasTsDataManager, tDataManager, persistedOwner,
+                                                            fieldName, new ArrayList<>(toRemoveFromCollection),
+                                                            metaOps, reflectioncache));
         int expectedCollectionSize = originalEmbeddedCollection.size() - toRemoveFromCollection.size();
         int actualCollectionSize =
                 ((Collection<T>)reflectioncache.getEntitiesCache()
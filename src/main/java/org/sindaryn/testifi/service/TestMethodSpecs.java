@@ -4,160 +4,167 @@ package org.sindaryn.testifi.service;
 import com.squareup.javapoet.*;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
+import org.junit.AfterClass;
 import org.junit.Test;
-import org.sindaryn.datafi.annotations.GetByUnique;
-import org.sindaryn.datafi.annotations.WithResolver;
+import org.sindaryn.testifi.instrumentation.PerformanceBaseline;
+import org.sindaryn.testifi.service.TestClassModel.Budget;
+import org.sindaryn.testifi.service.TestClassModel.EmbeddedField;
+import org.sindaryn.testifi.service.TestClassModel.Resolver;
+import org.sindaryn.testifi.service.TestClassModel.ResolverField;
 
-import javax.annotation.processing.ProcessingEnvironment;
 import javax.lang.model.element.Modifier;
-import javax.lang.model.element.TypeElement;
-import javax.lang.model.element.VariableElement;
-import javax.tools.Diagnostic;
+import javax.transaction.Transactional;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
-import static org.sindaryn.apifi.StaticUtils.*;
+import static org.sindaryn.apifi.StaticUtils.reflectionCache;
 import static org.sindaryn.datafi.StaticUtils.toPascalCase;
 import static org.sindaryn.datafi.StaticUtils.toPlural;
 import static org.sindaryn.testifi.StaticUtils.*;
+
+/**
+ * The test methods of an entity's test class, built from its {@link TestClassModel} alone -
+ * and so safe to use off the processing thread.
+ */
 @RequiredArgsConstructor
 public class TestMethodSpecs {
 
     @NonNull
-    private ProcessingEnvironment processingEnvironment;
+    private TestClassModel model;
 
     private static final Class<?> testLogic = TestLogic.class;
-    
-    public MethodSpec generateGetAllEndpointTest(TypeElement entity) {
-        String testName = "all" + pluralPascalCaseName(entity) + "Test";
-        return MethodSpec.methodBuilder(testName)
-                .addModifiers(Modifier.PUBLIC)
-                .addAnnotation(Test.class)
+
+    private static final ClassName jupiterTest = ClassName.get("org.junit.jupiter.api", "Test");
+    private static final ClassName execution = ClassName.get("org.junit.jupiter.api.parallel", "Execution");
+    private static final ClassName executionMode = ClassName.get("org.junit.jupiter.api.parallel", "ExecutionMode");
+    private static final ClassName resourceLock = ClassName.get("org.junit.jupiter.api.parallel", "ResourceLock");
+    private static final ClassName resourceAccessMode = ClassName.get("org.junit.jupiter.api.parallel", "ResourceAccessMode");
+    private static final ClassName jupiterAfterAll = ClassName.get("org.junit.jupiter.api", "AfterAll");
+
+    /*
+    * when targeting junit 5, read only tests are marked as safe for concurrent execution,
+    * and every test takes a lock on the tables of the entities it touches -
+    * shared for read only tests, exclusive for tests which write to the database.
+    * */
+    private MethodSpec.Builder testMethod(String testName, boolean readOnly, String... tableLocks) {
+        MethodSpec.Builder builder = MethodSpec.methodBuilder(testName)
+                .addModifiers(Modifier.PUBLIC);
+        if(!model.isJunit5())
+            return builder.addAnnotation(Test.class);
+        builder.addAnnotation(jupiterTest);
+        if(readOnly)
+            builder.addAnnotation(AnnotationSpec.builder(execution)
+                    .addMember("value", "$T.CONCURRENT", executionMode)
+                    .build());
+        for(String tableLock : tableLocks)
+            builder.addAnnotation(AnnotationSpec.builder(resourceLock)
+                    .addMember("value", "$S", tableLock)
+                    .addMember("mode", "$T.$L", resourceAccessMode, readOnly ? "READ" : "READ_WRITE")
+                    .build());
+        return builder;
+    }
+
+    private String plural() {
+        return toPlural(model.getEntityName());
+    }
+
+    public MethodSpec generateGetAllEndpointTest() {
+        String testName = "all" + plural() + "Test";
+        return testMethod(testName, true, model.getTableLock())
                 .addStatement("$T.getAllTest($T.class, $L, $L, $L)",
                         testLogic,
-                        ClassName.get(entity),
-                        dataManagerName(entity),
+                        model.getEntity(),
+                        model.getDataManagerName(),
                         reflectionCache,
-                        metaOpsName(entity)
-                )
+                        model.getMetaOpsName())
                 .returns(void.class)
                 .build();
     }
 
-    public MethodSpec generateFuzzySearchEndpointTest(TypeElement entity) {
-        String testName = pluralPascalCaseName(entity) + "FuzzySearchTest";
-        return MethodSpec.methodBuilder(testName)
-                .addModifiers(Modifier.PUBLIC)
-                .addAnnotation(Test.class)
-                .addStatement("$T.fuzzySearchTest($T.class, $L, $L, $L)",
+    public MethodSpec generateFuzzySearchEndpointTest() {
+        String testName = plural() + "FuzzySearchTest";
+        return testMethod(testName, false, model.getTableLock())
+                .addStatement("$T.fuzzySearchTest($T.class, $L, $L, $L, $L)",
                         testLogic,
-                        ClassName.get(entity),
-                        dataManagerName(entity),
+                        model.getEntity(),
+                        model.getDataManagerName(),
                         reflectionCache,
-                        metaOpsName(entity)
-                )
+                        entityMocker(),
+                        model.getMetaOpsName())
                 .returns(void.class)
                 .build();
     }
 
-    /*public MethodSpec generateGetAllSortedByEndpointTest(TypeElement entity){
-        String testName = "all" + toPlural(camelcaseNameOf(entity)) + "SortedByTest";
-        return MethodSpec.methodBuilder(testName)
-                .addModifiers(Modifier.PUBLIC)
-                .addAnnotation(Test.class)
-                .addStatement("$T.getAllTest($T.class, $L)",
-                        testLogic,
-                        ClassName.get(entity),
-                        dataManagerName(entity))
-                .returns(void.class)
-                .build();
-    }*/
-
-    public MethodSpec generateGetByIdEndpointTest(TypeElement entity) {
-        String testName = "get" + pascalCaseNameOf(entity) + "ById" + "Test";
-        return MethodSpec.methodBuilder(testName)
-                .addModifiers(Modifier.PUBLIC)
-                .addAnnotation(Test.class)
+    public MethodSpec generateGetByIdEndpointTest() {
+        String testName = "get" + model.getEntityName() + "ById" + "Test";
+        return testMethod(testName, true, model.getTableLock())
                 .addStatement("$T.getByIdTest($T.class, $L, $L, $L)",
                         testLogic,
-                        ClassName.get(entity),
-                        dataManagerName(entity),
-                        metaOpsName(entity),
+                        model.getEntity(),
+                        model.getDataManagerName(),
+                        model.getMetaOpsName(),
                         reflectionCache)
                 .returns(void.class)
                 .build();
     }
 
-    public MethodSpec generateGetByUniqueEndpointTest(TypeElement entity, VariableElement field) {
-        String resolverName = "get" + pascalCaseNameOf(entity) + "ByUnique" + pascalCaseNameOf(field);
+    public MethodSpec generateGetByUniqueEndpointTest(ResolverField field) {
+        String resolverName = "get" + model.getEntityName() + "ByUnique" + field.getPascalName();
         String testName = resolverName + "Test";
-        return MethodSpec.methodBuilder(testName)
-                .addModifiers(Modifier.PUBLIC)
-                .addAnnotation(Test.class)
+        return testMethod(testName, true, model.getTableLock())
                 .addStatement("$T.getByUniqueTest($T.class, $L, $L, $S, $L)",
                         testLogic,
-                        ClassName.get(entity),
-                        dataManagerName(entity),
-                        metaOpsName(entity),
-                        field.getSimpleName(),
+                        model.getEntity(),
+                        model.getDataManagerName(),
+                        model.getMetaOpsName(),
+                        field.getName(),
                         reflectionCache)
                 .returns(void.class)
                 .build();
     }
 
-    public MethodSpec generateGetByEndpointTest(TypeElement entity, VariableElement field) {
-        String resolverName = "get" + toPlural(pascalCaseNameOf(entity)) + "By" + pascalCaseNameOf(field);
+    public MethodSpec generateGetByEndpointTest(ResolverField field) {
+        String resolverName = "get" + plural() + "By" + field.getPascalName();
         String testName = resolverName + "Test";
-        checkForUniquenessConstraints(entity, resolverName, field.getSimpleName().toString().split(" "), processingEnvironment);
-        return MethodSpec.methodBuilder(testName)
-                .addModifiers(Modifier.PUBLIC)
-                .addAnnotation(Test.class)
+        return testMethod(testName, true, model.getTableLock())
                 .addStatement("$T.getByTest($T.class, $L, $L, $S, $L)",
                         testLogic,
-                        ClassName.get(entity),
-                        dataManagerName(entity),
-                        metaOpsName(entity),
-                        field.getSimpleName(),
+                        model.getEntity(),
+                        model.getDataManagerName(),
+                        model.getMetaOpsName(),
+                        field.getName(),
                         reflectionCache)
                 .returns(void.class)
                 .build();
     }
 
-    public MethodSpec generateGetAllByEndpointTest(TypeElement entity, VariableElement field) {
-        String resolverName = "getAll" + toPlural(pascalCaseNameOf(entity)) + "By" + toPlural(pascalCaseNameOf(field));
+    public MethodSpec generateGetAllByEndpointTest(ResolverField field) {
+        String resolverName = "getAll" + plural() + "By" + toPlural(field.getPascalName());
         String testName = resolverName + "Test";
-        checkForUniquenessConstraints(entity, resolverName, field.getSimpleName().toString().split(" "), processingEnvironment);
-        return MethodSpec.methodBuilder(testName)
-                .addModifiers(Modifier.PUBLIC)
-                .addAnnotation(Test.class)
+        return testMethod(testName, true, model.getTableLock())
                 .addStatement("$T.getAllByTest($T.class, $L, $L, $S, $L)",
                         testLogic,
-                        ClassName.get(entity),
-                        dataManagerName(entity),
-                        metaOpsName(entity),
-                        field.getSimpleName(),
+                        model.getEntity(),
+                        model.getDataManagerName(),
+                        model.getMetaOpsName(),
+                        field.getName(),
                         reflectionCache)
                 .returns(void.class)
                 .build();
     }
 
-    public MethodSpec generateCustomResolverEndpointTest(TypeElement entity, WithResolver withResolver) {
-
-        String resolverName = withResolver.name();
+    public MethodSpec generateCustomResolverEndpointTest(Resolver resolver) {
+        String resolverName = resolver.getName();
         String testName = resolverName + "Test";
-        MethodSpec.Builder builder = MethodSpec.methodBuilder(testName);
-        checkForUniquenessConstraints(entity, withResolver.name(), withResolver.args(), processingEnvironment);
-        argFieldNames(withResolver, builder);
+        MethodSpec.Builder builder = testMethod(testName, false, model.getTableLock());
+        argFieldNames(resolver, builder);
         builder
-                .addModifiers(Modifier.PUBLIC)
-                .addAnnotation(Test.class)
                 .addStatement("$T.selectByTest($T.class, $L, $L, $S, args, $L, $L)",
                         testLogic,
-                        ClassName.get(entity),
-                        dataManagerName(entity),
-                        metaOpsName(entity),
+                        model.getEntity(),
+                        model.getDataManagerName(),
+                        model.getMetaOpsName(),
                         resolverName,
                         entityMocker(),
                         reflectionCache)
@@ -165,289 +172,317 @@ public class TestMethodSpecs {
         return builder.build();
     }
 
-    private void argFieldNames(WithResolver withResolver, MethodSpec.Builder builder) {
-        String args = "\"" + String.join("\",\"", withResolver.args()) + "\"";
+    public MethodSpec generatePerformanceBudgetTest(Budget budget) {
+        String fieldSuffix = budget.getField().isEmpty() ? "" : toPascalCase(budget.getField());
+        String testName = budget.getResolver() + fieldSuffix + "PerformanceBudgetTest";
+        return testMethod(testName, false, model.getTableLock())
+                .addStatement("$T.performanceBudgetTest($T.class, $L, $L, $L, $L, $S, $S)",
+                        testLogic,
+                        model.getEntity(),
+                        model.getDataManagerName(),
+                        reflectionCache,
+                        entityMocker(),
+                        model.getMetaOpsName(),
+                        budget.getResolver(),
+                        budget.getField())
+                .returns(void.class)
+                .build();
+    }
+
+    public MethodSpec generateScalingTest(String resolver, String fieldName) {
+        String testName = resolver + (fieldName.isEmpty() ? "" : toPascalCase(fieldName)) + "ScalingTest";
+        return testMethod(testName, false, model.getTableLock())
+                .addStatement("$T.scalingTest($T.class, $L, $L, $L, $L, $S, $S)",
+                        testLogic,
+                        model.getEntity(),
+                        model.getDataManagerName(),
+                        reflectionCache,
+                        entityMocker(),
+                        model.getMetaOpsName(),
+                        resolver,
+                        fieldName)
+                .returns(void.class)
+                .build();
+    }
+
+    //runs outside of the test class' transaction, since each concurrent worker needs a transaction of its own
+    public MethodSpec generateStressTest() {
+        String testName = "concurrent" + model.getEntityName() + "MutationsStressTest";
+        return testMethod(testName, false, model.getTableLock())
+                .addAnnotation(AnnotationSpec.builder(Transactional.class)
+                        .addMember("value", "$T.TxType.NOT_SUPPORTED", Transactional.class)
+                        .build())
+                .addException(InterruptedException.class)
+                .addStatement("$T.stressTest($T.class, $L, $L, $L, $L)",
+                        testLogic,
+                        model.getEntity(),
+                        model.getDataManagerName(),
+                        reflectionCache,
+                        entityMocker(),
+                        model.getMetaOpsName())
+                .returns(void.class)
+                .build();
+    }
+
+    //runs once all of the entity's tests are done, see PerformanceBaseline
+    public MethodSpec generatePerformanceBaselineCheck() {
+        return MethodSpec.methodBuilder("checkPerformanceBaseline")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addAnnotation(model.isJunit5() ? jupiterAfterAll : ClassName.get(AfterClass.class))
+                .addStatement("$T.check($T.class)", PerformanceBaseline.class, model.getEntity())
+                .returns(void.class)
+                .build();
+    }
+
+    private void argFieldNames(Resolver resolver, MethodSpec.Builder builder) {
+        String args = "\"" + String.join("\",\"", resolver.getArgs()) + "\"";
         TypeName listOfStrings = ParameterizedTypeName.get(List.class, String.class);
         CodeBlock.Builder block = CodeBlock.builder()
                 .add("$T args = $T.asList($L)", listOfStrings, Arrays.class, args);
         builder.addStatement(block.build());
     }
 
-    public MethodSpec generateArchiveEndpointTest(TypeElement entity) {
-        String testName = "archive" + pascalCaseNameOf(entity) + "Test";
-        return MethodSpec.methodBuilder(testName)
-                .addModifiers(Modifier.PUBLIC)
-                .addAnnotation(Test.class)
-                .addStatement("$T.archiveTest($T.class, $L, $L, $L)",
+    public MethodSpec generateArchiveEndpointTest() {
+        String testName = "archive" + model.getEntityName() + "Test";
+        return testMethod(testName, false, model.getTableLock())
+                .addStatement("$T.archiveTest($T.class, $L, $L, $L, $L)",
                         testLogic,
-                        ClassName.get(entity),
-                        dataManagerName(entity),
+                        model.getEntity(),
+                        model.getDataManagerName(),
                         reflectionCache,
-                        metaOpsName(entity))
+                        entityMocker(),
+                        model.getMetaOpsName())
                 .returns(void.class)
                 .build();
     }
 
-    public MethodSpec generateArchiveCollectionEndpointTest(TypeElement entity) {
-        String testName = "archive" + toPlural(pascalCaseNameOf(entity)) + "Test";
-        return MethodSpec.methodBuilder(testName)
-                .addModifiers(Modifier.PUBLIC)
-                .addAnnotation(Test.class)
-                .addStatement("$T.archiveCollectionTest($T.class, $L, $L)",
+    public MethodSpec generateArchiveCollectionEndpointTest() {
+        String testName = "archive" + plural() + "Test";
+        return testMethod(testName, false, model.getTableLock())
+                .addStatement("$T.archiveCollectionTest($T.class, $L, $L, $L)",
                         testLogic,
-                        ClassName.get(entity),
-                        dataManagerName(entity),
-                        metaOpsName(entity))
+                        model.getEntity(),
+                        model.getDataManagerName(),
+                        entityMocker(),
+                        model.getMetaOpsName())
                 .returns(void.class)
                 .build();
     }
 
-    public MethodSpec generateDeArchiveCollectionEndpointTest(TypeElement entity) {
-        String testName = "deArchive" + toPlural(pascalCaseNameOf(entity)) + "Test";
-        return MethodSpec.methodBuilder(testName)
-                .addModifiers(Modifier.PUBLIC)
-                .addAnnotation(Test.class)
-                .addStatement("$T.deArchiveCollectionTest($T.class, $L, $L)",
+    public MethodSpec generateDeArchiveCollectionEndpointTest() {
+        String testName = "deArchive" + plural() + "Test";
+        return testMethod(testName, false, model.getTableLock())
+                .addStatement("$T.deArchiveCollectionTest($T.class, $L, $L, $L)",
                         testLogic,
-                        ClassName.get(entity),
-                        dataManagerName(entity),
-                        metaOpsName(entity))
+                        model.getEntity(),
+                        model.getDataManagerName(),
+                        entityMocker(),
+                        model.getMetaOpsName())
                 .returns(void.class)
                 .build();
     }
 
-    public MethodSpec generateDeArchiveEndpointTest(TypeElement entity) {
-        String testName = "deArchive" + pascalCaseNameOf(entity) + "Test";
-        return MethodSpec.methodBuilder(testName)
-                .addModifiers(Modifier.PUBLIC)
-                .addAnnotation(Test.class)
-                .addStatement("$T.deArchiveTest($T.class, $L, $L, $L)",
+    public MethodSpec generateDeArchiveEndpointTest() {
+        String testName = "deArchive" + model.getEntityName() + "Test";
+        return testMethod(testName, false, model.getTableLock())
+                .addStatement("$T.deArchiveTest($T.class, $L, $L, $L, $L)",
                         testLogic,
-                        ClassName.get(entity),
-                        dataManagerName(entity),
+                        model.getEntity(),
+                        model.getDataManagerName(),
                         reflectionCache,
-                        metaOpsName(entity))
+                        entityMocker(),
+                        model.getMetaOpsName())
                 .returns(void.class)
                 .build();
     }
 
-    public MethodSpec generateAddEndpointTest(TypeElement entity) {
-        String testName = "add" + pascalCaseNameOf(entity) + "Test";
-        return MethodSpec.methodBuilder(testName)
-                .addModifiers(Modifier.PUBLIC)
-                .addAnnotation(Test.class)
+    public MethodSpec generateAddEndpointTest() {
+        String testName = "add" + model.getEntityName() + "Test";
+        return testMethod(testName, false, model.getTableLock())
                 .addStatement("$T.addTest($T.class, $L, $L, $L)",
                         testLogic,
-                        ClassName.get(entity),
-                        dataManagerName(entity),
+                        model.getEntity(),
+                        model.getDataManagerName(),
                         entityMocker(),
-                        metaOpsName(entity))
+                        model.getMetaOpsName())
                 .returns(void.class)
                 .build();
     }
 
-    public MethodSpec generateUpdateEndpointTest(TypeElement entity) {
-        String testName = "update" + pascalCaseNameOf(entity) + "Test";
-        return MethodSpec.methodBuilder(testName)
-                .addModifiers(Modifier.PUBLIC)
-                .addAnnotation(Test.class)
+    public MethodSpec generateUpdateEndpointTest() {
+        String testName = "update" + model.getEntityName() + "Test";
+        return testMethod(testName, false, model.getTableLock())
                 .addStatement("$T.updateTest($T.class, $L, $L, $L, $L)",
                         testLogic,
-                        ClassName.get(entity),
-                        dataManagerName(entity),
+                        model.getEntity(),
+                        model.getDataManagerName(),
                         entityMocker(),
                         reflectionCache,
-                        metaOpsName(entity))
+                        model.getMetaOpsName())
                 .returns(void.class)
                 .build();
     }
 
-    public MethodSpec generateDeleteEndpointTest(TypeElement entity) {
-        String testName = "delete" + pascalCaseNameOf(entity) + "Test";
-        return MethodSpec.methodBuilder(testName)
-                .addModifiers(Modifier.PUBLIC)
-                .addAnnotation(Test.class)
+    public MethodSpec generateDeleteEndpointTest() {
+        String testName = "delete" + model.getEntityName() + "Test";
+        return testMethod(testName, false, model.getTableLock())
                 .addStatement("$T.deleteTest($T.class, $L, $L, $L, $L)",
                         testLogic,
-                        ClassName.get(entity),
-                        dataManagerName(entity),
+                        model.getEntity(),
+                        model.getDataManagerName(),
                         reflectionCache,
                         entityMocker(),
-                        metaOpsName(entity))
+                        model.getMetaOpsName())
                 .returns(void.class)
                 .build();
     }
 
-    public MethodSpec generateGetCollectionByIdEndpointTest(TypeElement entity) {
-        String testName = "get" + toPlural(pascalCaseNameOf(entity)) + "ByIdTest";
-        return MethodSpec.methodBuilder(testName)
-                .addModifiers(Modifier.PUBLIC)
-                .addAnnotation(Test.class)
+    public MethodSpec generateGetCollectionByIdEndpointTest() {
+        String testName = "get" + plural() + "ByIdTest";
+        return testMethod(testName, true, model.getTableLock())
                 .addStatement("$T.getCollectionByIdTest($T.class, $L)",
                         testLogic,
-                        ClassName.get(entity),
-                        dataManagerName(entity))
+                        model.getEntity(),
+                        model.getDataManagerName())
                 .returns(void.class)
                 .build();
     }
 
-    public MethodSpec generateAddCollectionEndpointTest(TypeElement entity) {
-        String testName = "add" + toPlural(pascalCaseNameOf(entity)) + "Test";
-        return MethodSpec.methodBuilder(testName)
-                .addModifiers(Modifier.PUBLIC)
-                .addAnnotation(Test.class)
+    public MethodSpec generateAddCollectionEndpointTest() {
+        String testName = "add" + plural() + "Test";
+        return testMethod(testName, false, model.getTableLock())
                 .addStatement("$T.addCollectionTest($T.class, $L, $L, $L)",
                         testLogic,
-                        ClassName.get(entity),
-                        dataManagerName(entity),
+                        model.getEntity(),
+                        model.getDataManagerName(),
                         entityMocker(),
-                        metaOpsName(entity))
+                        model.getMetaOpsName())
                 .returns(void.class)
                 .build();
     }
 
-    public MethodSpec generateUpdateCollectionEndpointTest(TypeElement entity) {
-        String testName = "update" + toPlural(pascalCaseNameOf(entity)) + "Test";
-        return MethodSpec.methodBuilder(testName)
-                .addModifiers(Modifier.PUBLIC)
-                .addAnnotation(Test.class)
+    public MethodSpec generateUpdateCollectionEndpointTest() {
+        String testName = "update" + plural() + "Test";
+        return testMethod(testName, false, model.getTableLock())
                 .addStatement("$T.updateCollectionTest($T.class, $L, $L, $L)",
                         testLogic,
-                        ClassName.get(entity),
-                        dataManagerName(entity),
+                        model.getEntity(),
+                        model.getDataManagerName(),
                         entityMocker(),
-                        metaOpsName(entity))
+                        model.getMetaOpsName())
                 .returns(void.class)
                 .build();
     }
 
-    public MethodSpec generateDeleteCollectionEndpointTest(TypeElement entity) {
-        String testName = "delete" + toPlural(pascalCaseNameOf(entity)) + "Test";
-        return MethodSpec.methodBuilder(testName)
-                .addModifiers(Modifier.PUBLIC)
-                .addAnnotation(Test.class)
+    public MethodSpec generateDeleteCollectionEndpointTest() {
+        String testName = "delete" + plural() + "Test";
+        return testMethod(testName, false, model.getTableLock())
                 .addStatement("$T.deleteCollectionTest($T.class, $L, $L, $L)",
                         testLogic,
-                        ClassName.get(entity),
-                        dataManagerName(entity),
+                        model.getEntity(),
+                        model.getDataManagerName(),
                         entityMocker(),
-                        metaOpsName(entity))
+                        model.getMetaOpsName())
                 .returns(void.class)
                 .build();
     }
 
-    public MethodSpec generateGetAsEmbeddedEntityTest(VariableElement embedded, TypeElement owner) {
-        String testName = "get" + pascalCaseNameOf(embedded) + "From" + pascalCaseNameOf(owner) + "Test";
-        return MethodSpec.methodBuilder(testName)
-                .addModifiers(Modifier.PUBLIC)
-                .addAnnotation(Test.class)
+    public MethodSpec generateGetAsEmbeddedEntityTest(EmbeddedField embedded) {
+        String testName = "get" + embedded.getPascalName() + "From" + model.getEntityName() + "Test";
+        return testMethod(testName, false, model.getTableLock(), embedded.getTableLock())
                 .addStatement("$T.getAsEmbeddedEntityTest($T.class, $T.class, $L, $L, $S, $L, $L)",
                         testLogic,
-                        ClassName.get(embedded.asType()),
-                        ClassName.get(owner),
-                        dataManagerName(embedded),
-                        dataManagerName(owner),
-                        embedded.getSimpleName(),
+                        embedded.getType(),
+                        model.getEntity(),
+                        embedded.getDataManagerName(),
+                        model.getDataManagerName(),
+                        embedded.getName(),
                         entityMocker(),
                         reflectionCache)
                 .returns(void.class)
                 .build();
     }
 
-    public MethodSpec generateGetAsEmbeddedEntityCollectionTest(VariableElement embedded, TypeElement owner) {
-        String testName = "get" + pascalCaseNameOf(embedded) + "From" + pascalCaseNameOf(owner) + "Test";
-        return MethodSpec.methodBuilder(testName)
-                .addModifiers(Modifier.PUBLIC)
-                .addAnnotation(Test.class)
+    public MethodSpec generateGetAsEmbeddedEntityCollectionTest(EmbeddedField embedded) {
+        String testName = "get" + embedded.getPascalName() + "From" + model.getEntityName() + "Test";
+        return testMethod(testName, false, model.getTableLock(), embedded.getTableLock())
                 .addStatement("$T.getAsEmbeddedEntityCollectionTest($T.class, $T.class, $L, $L, $S, $L, $L)",
                         testLogic,
-                        collectionTypeName(embedded),
-                        ClassName.get(owner),
-                        dataManagerName(embedded),
-                        dataManagerName(owner),
-                        embedded.getSimpleName(),
+                        embedded.getType(),
+                        model.getEntity(),
+                        embedded.getDataManagerName(),
+                        model.getDataManagerName(),
+                        embedded.getName(),
                         entityMocker(),
                         reflectionCache)
                 .returns(void.class)
                 .build();
     }
 
-    public MethodSpec generateAttachExistingToEmbeddedCollectionTest(VariableElement embedded, TypeElement owner) {
-        String testName =
-                "attachExisting" + pascalCaseNameOf(embedded) + "To" + pascalCaseNameOf(owner) + "Test";
-        return MethodSpec.methodBuilder(testName)
-                .addModifiers(Modifier.PUBLIC)
-                .addAnnotation(Test.class)
+    public MethodSpec generateAttachExistingToEmbeddedCollectionTest(EmbeddedField embedded) {
+        String testName = "attachExisting" + embedded.getPascalName() + "To" + model.getEntityName() + "Test";
+        return testMethod(testName, false, model.getTableLock(), embedded.getTableLock())
                 .addStatement("$T.attachExistingToEmbeddedCollectionTest($T.class, $T.class, $L, $L, $S, $L, $L, $L)",
                         testLogic,
-                        collectionTypeName(embedded),
-                        ClassName.get(owner),
-                        dataManagerName(embedded),
-                        dataManagerName(owner),
-                        embedded.getSimpleName(),
+                        embedded.getType(),
+                        model.getEntity(),
+                        embedded.getDataManagerName(),
+                        model.getDataManagerName(),
+                        embedded.getName(),
                         entityMocker(),
                         reflectionCache,
-                        embeddedCollectionMetaOpsName(embedded))
+                        embedded.getEmbeddedCollectionMetaOpsName())
                 .returns(void.class)
                 .build();
     }
 
-    public MethodSpec generateRemoveFromEmbeddedCollectionTest(VariableElement embedded, TypeElement owner) {
-        String testName =
-                "remove" + pascalCaseNameOf(embedded) + "From" + pascalCaseNameOf(owner) + "Test";
-        return MethodSpec.methodBuilder(testName)
-                .addModifiers(Modifier.PUBLIC)
-                .addAnnotation(Test.class)
+    public MethodSpec generateRemoveFromEmbeddedCollectionTest(EmbeddedField embedded) {
+        String testName = "remove" + embedded.getPascalName() + "From" + model.getEntityName() + "Test";
+        return testMethod(testName, false, model.getTableLock(), embedded.getTableLock())
                 .addStatement("$T.removeFromEmbeddedCollectionTest($T.class, $T.class, $L, $L, $S, $L, $L, $L)",
                         testLogic,
-                        collectionTypeName(embedded),
-                        ClassName.get(owner),
-                        dataManagerName(embedded),
-                        dataManagerName(owner),
-                        embedded.getSimpleName(),
+                        embedded.getType(),
+                        model.getEntity(),
+                        embedded.getDataManagerName(),
+                        model.getDataManagerName(),
+                        embedded.getName(),
                         entityMocker(),
                         reflectionCache,
-                        embeddedCollectionMetaOpsName(embedded))
+                        embedded.getEmbeddedCollectionMetaOpsName())
                 .returns(void.class)
                 .build();
     }
 
-    public MethodSpec generateAddNewToEmbeddedCollectionTest(VariableElement embedded, TypeElement owner) {
-        String testName =
-                "addNew" + pascalCaseNameOf(embedded) + "To" + pascalCaseNameOf(owner) + "Test";
-        return MethodSpec.methodBuilder(testName)
-                .addModifiers(Modifier.PUBLIC)
-                .addAnnotation(Test.class)
+    public MethodSpec generateAddNewToEmbeddedCollectionTest(EmbeddedField embedded) {
+        String testName = "addNew" + embedded.getPascalName() + "To" + model.getEntityName() + "Test";
+        return testMethod(testName, false, model.getTableLock(), embedded.getTableLock())
                 .addStatement("$T.addNewToEmbeddedCollectionTest($T.class, $T.class, $L, $L, $S, $L, $L, $L)",
                         testLogic,
-                        collectionTypeName(embedded),
-                        ClassName.get(owner),
-                        dataManagerName(embedded),
-                        dataManagerName(owner),
-                        embedded.getSimpleName(),
+                        embedded.getType(),
+                        model.getEntity(),
+                        embedded.getDataManagerName(),
+                        model.getDataManagerName(),
+                        embedded.getName(),
                         entityMocker(),
                         reflectionCache,
-                        embeddedCollectionMetaOpsName(embedded))
+                        embedded.getEmbeddedCollectionMetaOpsName())
                 .returns(void.class)
                 .build();
     }
 
-    public MethodSpec generateUpdateEmbeddedCollectionTest(VariableElement embedded, TypeElement owner) {
-        String testName =
-                "update" + pascalCaseNameOf(embedded) + "In" + pascalCaseNameOf(owner) + "Test";
-        return MethodSpec.methodBuilder(testName)
-                .addModifiers(Modifier.PUBLIC)
-                .addAnnotation(Test.class)
+    public MethodSpec generateUpdateEmbeddedCollectionTest(EmbeddedField embedded) {
+        String testName = "update" + embedded.getPascalName() + "In" + model.getEntityName() + "Test";
+        return testMethod(testName, false, model.getTableLock(), embedded.getTableLock())
                 .addStatement("$T.updateEmbeddedCollectionTest($T.class, $T.class, $L, $L, $S, $L, $L, $L)",
                         testLogic,
-                        collectionTypeName(embedded),
-                        ClassName.get(owner),
-                        dataManagerName(embedded),
-                        dataManagerName(owner),
-                        embedded.getSimpleName(),
+                        embedded.getType(),
+                        model.getEntity(),
+                        embedded.getDataManagerName(),
+                        model.getDataManagerName(),
+                        embedded.getName(),
                         entityMocker(),
                         reflectionCache,
-                        embeddedCollectionMetaOpsName(embedded))
+                        embedded.getEmbeddedCollectionMetaOpsName())
                 .returns(void.class)
                 .build();
     }
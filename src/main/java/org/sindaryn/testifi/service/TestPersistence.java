@@ -0,0 +1,41 @@
+package org.sindaryn.testifi.service;
+
+import org.springframework.context.ApplicationContext;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * The persistence context of the test managed transaction, for {@link TestLogic}'s static methods.
+ * Bound by {@link FixtureSnapshotListener} before each generated test class runs; outside of a
+ * transaction (or without JPA) these are no-ops.
+ */
+public abstract class TestPersistence {
+
+    private static volatile EntityManagerFactory entityManagerFactory;
+
+    static void bind(ApplicationContext applicationContext) {
+        entityManagerFactory = applicationContext.getBeanProvider(EntityManagerFactory.class).getIfAvailable();
+    }
+
+    //writes pending changes to the database without issuing any queries of its own
+    public static void flush() {
+        EntityManager entityManager = current();
+        if(entityManager != null) entityManager.flush();
+    }
+
+    //flushes, then detaches all managed entities - so that subsequent reads hit the database rather than the
+    //first level cache, and subsequent flushes don't dirty check whatever was persisted so far
+    public static void flushAndClear() {
+        EntityManager entityManager = current();
+        if(entityManager == null) return;
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    private static EntityManager current() {
+        EntityManagerFactory factory = entityManagerFactory;
+        return factory != null ? EntityManagerFactoryUtils.getTransactionalEntityManager(factory) : null;
+    }
+}
@@ -0,0 +1,177 @@
+package org.sindaryn.testifi.generator;
+
+import com.squareup.javapoet.JavaFile;
+import com.squareup.javapoet.TypeSpec;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.annotation.processing.*;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.TypeElement;
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compiles a small entity model twice against the same cache directory, and checks whether
+ * the (stand-in) test class of the Owner entity is written from the cache or regenerated.
+ */
+public class GenerationCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File cacheDirectory;
+    private Map<String, String> sources;
+
+    @Before
+    public void setUp() throws IOException {
+        cacheDirectory = folder.newFolder("testifi-cache");
+        sources = new HashMap<>();
+        sources.put("model/Base.java",
+                "package model;\n" +
+                "@javax.persistence.MappedSuperclass\n" +
+                "public abstract class Base {\n" +
+                "    @javax.persistence.Id private Long id;\n" +
+                "}\n");
+        sources.put("model/Named.java",
+                "package model;\n" +
+                "@javax.persistence.MappedSuperclass\n" +
+                "public abstract class Named extends Base {\n" +
+                "    private String name;\n" +
+                "}\n");
+        sources.put("model/Owner.java", owner(""));
+        sources.put("model/Pet.java", pet(""));
+        assertTrue("first compilation generates", compileAndCheckRegenerated());
+    }
+
+    @Test
+    public void unchangedModelIsWrittenFromCache() throws IOException {
+        assertFalse(compileAndCheckRegenerated());
+    }
+
+    @Test
+    public void changedRelatedEntityRegenerates() throws IOException {
+        sources.put("model/Pet.java", pet("@org.sindaryn.apifi.annotations.NonDirectlyExposable\n"));
+        assertTrue(compileAndCheckRegenerated());
+    }
+
+    @Test
+    public void changedSuperclassOfSuperclassRegenerates() throws IOException {
+        sources.put("model/Base.java",
+                "package model;\n" +
+                "@javax.persistence.MappedSuperclass\n" +
+                "public abstract class Base {\n" +
+                "    @javax.persistence.Id private Long id;\n" +
+                "    private Long version;\n" +
+                "}\n");
+        assertTrue(compileAndCheckRegenerated());
+    }
+
+    @Test
+    public void invalidModelFailsOnEveryCompilation() throws IOException {
+        sources.put("model/Owner.java", owner(
+                "@org.sindaryn.testifi.annotations.PerformanceBudget(resolver = \"getEverything\", p99Millis = 10)\n"));
+        assertFalse("first compilation reports the invalid budget", compile().succeeded);
+        Compilation second = compile();
+        assertFalse("second compilation reports it again", second.succeeded);
+        assertTrue("rather than writing the test class from the cache", second.regenerated);
+    }
+
+    private static String owner(String annotations) {
+        return "package model;\n" +
+               annotations +
+               "@javax.persistence.Entity\n" +
+               "public class Owner extends Named {\n" +
+               "    @javax.persistence.OneToMany private java.util.List<Pet> pets;\n" +
+               "}\n";
+    }
+
+    private static String pet(String annotations) {
+        return "package model;\n" +
+               annotations +
+               "@javax.persistence.Entity\n" +
+               "public class Pet {\n" +
+               "    @javax.persistence.Id private Long id;\n" +
+               "    @javax.persistence.ManyToOne private Owner owner;\n" +
+               "}\n";
+    }
+
+    private boolean compileAndCheckRegenerated() throws IOException {
+        Compilation compilation = compile();
+        assertTrue("compilation succeeds", compilation.succeeded);
+        return compilation.regenerated;
+    }
+
+    private Compilation compile() throws IOException {
+        File sourceDirectory = folder.newFolder();
+        File outputDirectory = folder.newFolder();
+        List<File> files = new ArrayList<>();
+        for(Map.Entry<String, String> source : sources.entrySet()){
+            File file = new File(sourceDirectory, source.getKey());
+            if(!file.getParentFile().exists() && !file.getParentFile().mkdirs())
+                throw new IOException("cannot create directory " + file.getParentFile());
+            Files.write(file.toPath(), source.getValue().getBytes(StandardCharsets.UTF_8));
+            files.add(file);
+        }
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8)) {
+            List<String> options = Arrays.asList(
+                    "-proc:only",
+                    "-d", outputDirectory.getPath(),
+                    "-s", outputDirectory.getPath(),
+                    "-classpath", System.getProperty("java.class.path"),
+                    "-A" + TestifiOptions.CACHE_DIR + "=" + cacheDirectory.getPath());
+            CacheProbe probe = new CacheProbe();
+            JavaCompiler.CompilationTask task =
+                    compiler.getTask(null, fileManager, null, options, null, fileManager.getJavaFileObjectsFromFiles(files));
+            task.setProcessors(Collections.singletonList(probe));
+            Compilation compilation = new Compilation();
+            compilation.succeeded = task.call();
+            compilation.regenerated = probe.regenerated;
+            return compilation;
+        }
+    }
+
+    private static class Compilation {
+        private boolean succeeded;
+        private boolean regenerated;
+    }
+
+    //does with the Owner entity what GraphQLApiTestFactory does with each entity
+    @SupportedAnnotationTypes("*")
+    @SupportedOptions(TestifiOptions.CACHE_DIR)
+    private static class CacheProbe extends AbstractProcessor {
+        private Boolean regenerated;
+
+        @Override
+        public SourceVersion getSupportedSourceVersion() {
+            return SourceVersion.latestSupported();
+        }
+
+        @Override
+        public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnvironment) {
+            if(regenerated != null) return false;
+            TypeElement owner = processingEnv.getElementUtils().getTypeElement("model.Owner");
+            GenerationCache cache = new GenerationCache(processingEnv);
+            String fingerprint = new EntityValidator(processingEnv).validate(owner) ? cache.fingerprint(owner) : null;
+            String cachedSource = cache.cachedSource("model.OwnerTest", fingerprint);
+            regenerated = cachedSource == null;
+            if(regenerated)
+                cache.write(JavaFile.builder("model", TypeSpec.classBuilder("OwnerTest").build()).build(), fingerprint);
+            else
+                cache.writeCached("model.OwnerTest", cachedSource);
+            return false;
+        }
+    }
+}
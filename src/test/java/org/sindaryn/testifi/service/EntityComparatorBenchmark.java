@@ -0,0 +1,102 @@
+package org.sindaryn.testifi.service;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.sindaryn.datafi.annotations.NonApiUpdatable;
+import org.sindaryn.datafi.annotations.NonApiUpdatables;
+
+import javax.persistence.Column;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.sindaryn.datafi.reflection.ReflectionCache.getClassFields;
+
+/**
+ * Compares two equal instances of a wide (32 field) class, once the way the {@link EquivalencyMatcher} used to -
+ * resolving and filtering the class' fields and reading each through {@link Field#get} on every comparison -
+ * and once through the {@link EntityComparator}'s precomputed method handle getters. The former no longer returns
+ * early on a pair of nulls, so that both compare every field.
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.sindaryn.testifi.service.EntityComparatorBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntityComparatorBenchmark {
+
+    public static class WideEntity {
+        private Long id;
+        private String field1, field2, field3, field4, field5, field6, field7, field8, field9, field10;
+        private String field11, field12, field13, field14, field15, field16, field17, field18, field19, field20;
+        private Integer field21, field22, field23, field24, field25, field26, field27, field28;
+        @Column(updatable = false)
+        private String createdBy;
+        @NonApiUpdatable
+        private String externalId;
+        private Boolean active;
+    }
+
+    private WideEntity expected;
+    private WideEntity actual;
+
+    @Setup
+    public void setUp() throws IllegalAccessException {
+        expected = wideEntity();
+        actual = wideEntity();
+    }
+
+    private static WideEntity wideEntity() throws IllegalAccessException {
+        WideEntity entity = new WideEntity();
+        int i = 0;
+        for(Field field : WideEntity.class.getDeclaredFields()){
+            field.setAccessible(true);
+            i++;
+            if(field.getType() == String.class) field.set(entity, "value " + i);
+            else if(field.getType() == Integer.class) field.set(entity, i);
+            else if(field.getType() == Long.class) field.set(entity, (long) i);
+            else if(field.getType() == Boolean.class) field.set(entity, true);
+        }
+        return entity;
+    }
+
+    @Benchmark
+    public boolean reflective() throws IllegalAccessException {
+        for (Field field : getClassFields(expected.getClass())) {
+            field.setAccessible(true);
+            if(isUpdatableField(field)){
+                if(field.get(expected) == null && field.get(actual) == null) continue;
+                if(field.get(expected) == null ^ field.get(actual) == null) return false;
+                if(!field.get(expected).equals(field.get(actual)))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    @Benchmark
+    public boolean methodHandles() {
+        return EntityComparator.of(expected.getClass()).matches(expected, actual);
+    }
+
+    //as EquivalencyMatcher evaluated it before EntityComparator
+    private static boolean isUpdatableField(Field field) {
+        Object parent = field.getDeclaringClass();
+        return !(field.isAnnotationPresent(Column.class) && !field.getAnnotation(Column.class).updatable()) &&
+                !field.isAnnotationPresent(NonApiUpdatable.class) &&
+                !(
+                        parent.getClass().isAnnotationPresent(NonApiUpdatables.class) &&
+                                Arrays.asList(parent.getClass().getAnnotation(NonApiUpdatables.class).value())
+                                        .contains(field.getName())
+                );
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(EntityComparatorBenchmark.class.getSimpleName()).build()).run();
+    }
+}
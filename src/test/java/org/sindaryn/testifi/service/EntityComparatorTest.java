@@ -0,0 +1,100 @@
+package org.sindaryn.testifi.service;
+
+import org.junit.Test;
+import org.sindaryn.datafi.annotations.NonApiUpdatable;
+
+import javax.persistence.Column;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EntityComparatorTest {
+
+    static class Person {
+        String name;
+        String nickname;
+        Integer age;
+        @Column(updatable = false)
+        String createdBy;
+        @NonApiUpdatable
+        String externalId;
+
+        Person(String name, String nickname, Integer age) {
+            this.name = name;
+            this.nickname = nickname;
+            this.age = age;
+        }
+    }
+
+    static class Employee extends Person {
+        //compared along with the fields Person declares
+        String department;
+
+        Employee(String name, String department) {
+            super(name, null, null);
+            this.department = department;
+        }
+    }
+
+    static class Base {
+        String code;
+    }
+
+    static class Derived extends Base {
+        //shadows Base.code, which is still compared
+        String code;
+    }
+
+    private static boolean matches(Object expected, Object actual) {
+        return EntityComparator.of(expected.getClass()).matches(expected, actual);
+    }
+
+    @Test
+    public void equalFieldsMatch() {
+        assertTrue(matches(new Person("Ann", "Annie", 30), new Person("Ann", "Annie", 30)));
+    }
+
+    @Test
+    public void differentFieldDoesNotMatch() {
+        assertFalse(matches(new Person("Ann", "Annie", 30), new Person("Ann", "Annie", 31)));
+    }
+
+    @Test
+    public void fieldsAfterAPairOfNullsAreStillCompared() {
+        assertFalse(matches(new Person("Ann", null, 30), new Person("Ann", null, 31)));
+    }
+
+    @Test
+    public void fieldNullOnOneSideOnlyDoesNotMatch() {
+        assertFalse(matches(new Person("Ann", null, 30), new Person("Ann", "Annie", 30)));
+        assertFalse(matches(new Person("Ann", "Annie", 30), new Person("Ann", null, 30)));
+    }
+
+    @Test
+    public void nonUpdatableFieldsAreIgnored() {
+        Person expected = new Person("Ann", "Annie", 30), actual = new Person("Ann", "Annie", 30);
+        expected.createdBy = "import";
+        actual.createdBy = "api";
+        expected.externalId = "a-1";
+        actual.externalId = "b-2";
+        assertTrue(matches(expected, actual));
+    }
+
+    @Test
+    public void inheritedFieldsAreCompared() {
+        assertTrue(matches(new Employee("Ann", "Sales"), new Employee("Ann", "Sales")));
+        assertFalse(matches(new Employee("Ann", "Sales"), new Employee("Bob", "Sales")));
+        assertFalse(matches(new Employee("Ann", "Sales"), new Employee("Ann", "Support")));
+    }
+
+    @Test
+    public void shadowedFieldsAreCompared() {
+        Derived expected = new Derived(), actual = new Derived();
+        expected.code = actual.code = "D";
+        ((Base) expected).code = "B1";
+        ((Base) actual).code = "B2";
+        assertFalse(matches(expected, actual));
+        ((Base) actual).code = "B1";
+        assertTrue(matches(expected, actual));
+    }
+}
@@ -0,0 +1,69 @@
+package org.sindaryn.testifi.service;
+
+import org.junit.Test;
+
+import javax.persistence.Entity;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.sindaryn.testifi.service.EquivalencyMatcher.isEqualTo;
+
+public class EquivalencyMatcherTest {
+
+    @Entity
+    public static class Pet {
+        private Long id;
+        private String name;
+
+        Pet(Long id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        public Long getId() {
+            return id;
+        }
+    }
+
+    private static boolean matches(List<?> expected, List<?> actual) {
+        return isEqualTo(actual).matches(expected);
+    }
+
+    @Test
+    public void sameEntitiesInAnyOrderMatch() {
+        assertTrue(matches(
+                Arrays.asList(new Pet(1L, "Rex"), new Pet(2L, "Tom")),
+                Arrays.asList(new Pet(2L, "Tom"), new Pet(1L, "Rex"))));
+    }
+
+    @Test
+    public void entityWithDifferentFieldsDoesNotMatch() {
+        assertFalse(matches(
+                Arrays.asList(new Pet(1L, "Rex"), new Pet(2L, "Tom")),
+                Arrays.asList(new Pet(1L, "Rex"), new Pet(2L, "Jerry"))));
+    }
+
+    @Test
+    public void duplicateExpectedIdsDoNotMatchDistinctActualIds() {
+        assertFalse(matches(
+                Arrays.asList(new Pet(1L, "Rex"), new Pet(1L, "Rex")),
+                Arrays.asList(new Pet(1L, "Rex"), new Pet(2L, "Tom"))));
+    }
+
+    @Test
+    public void duplicateActualIdsDoNotMatchDistinctExpectedIds() {
+        assertFalse(matches(
+                Arrays.asList(new Pet(1L, "Rex"), new Pet(2L, "Tom")),
+                Arrays.asList(new Pet(1L, "Rex"), new Pet(1L, "Rex"))));
+    }
+
+    @Test
+    public void collectionsOfDifferentSizesDoNotMatch() {
+        assertFalse(matches(
+                Collections.singletonList(new Pet(1L, "Rex")),
+                Arrays.asList(new Pet(1L, "Rex"), new Pet(2L, "Tom"))));
+    }
+}